@@ -0,0 +1,109 @@
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class AtomicFile {
+  /*
+  Writes the contents of a file, for write().
+  */
+  public interface Contents {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /*
+  Constructor
+  */
+  private AtomicFile() {
+  }
+
+  /*
+  Purpose: Replaces a file in one step, so that anyone reading it (or the file after a crash) sees either
+           the whole old file or the whole new one. The contents are written to a temporary file in the same
+           directory, forced to disk, then renamed over the target.
+           The new file keeps the permissions of the file it replaces, and a new file gets the same
+           permissions as any other file created by the process.
+  Arguments: filename - The file to write (String), contents - Writes the contents to the stream it is given,
+             which it may close (Contents).
+  Throws: IOException if the file can't be written, in which case the target is left as it was.
+  */
+  public static void write(String filename, Contents contents) throws IOException {
+    Path target = Paths.get(filename).toAbsolutePath();
+    Path temp = createTemp(target);
+    boolean moved = false;
+    try {
+      if (Files.exists(target)) {
+        copyPermissions(target, temp);
+      }
+
+      try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+        // Closing the stream given to contents only flushes it, so the file can be forced to disk after
+        OutputStream out = new FilterOutputStream(file) {
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+          }
+
+          @Override
+          public void close() throws IOException {
+            this.flush();
+          }
+        };
+        contents.write(out);
+        out.flush();
+        file.getFD().sync();
+      }
+
+      try {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      moved = true;
+
+    } finally {
+      if (!moved) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+          // Nothing more can be done
+        }
+      }
+    }
+  }
+
+  /*
+  Purpose: Helper method that creates an empty temporary file next to the target. Unlike Files.createTempFile,
+           which makes the file readable by its owner only, this creates it with the process's default permissions.
+  */
+  private static Path createTemp(Path target) throws IOException {
+    while (true) {
+      Path temp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+      try {
+        Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+        return temp;
+      } catch (FileAlreadyExistsException e) {
+        // Tries another name
+      }
+    }
+  }
+
+  /*
+  Purpose: Helper method that gives a file the permissions of another, where the file system has them.
+  */
+  private static void copyPermissions(Path from, Path to) throws IOException {
+    try {
+      Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+    } catch (UnsupportedOperationException e) {
+      // Not a POSIX file system, so there are no permissions to copy
+    }
+  }
+}
@@ -1,34 +1,57 @@
-import java.util.Scanner;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class Book {
+  private static final Member[] NO_MEMBERS = new Member[0];
+
   private String title;
   private String author;
   private String genre;
   private String serialNumber;
-  private boolean isRented;
-  private Member renter;
-  private List<Member> rentHistory;
+  // The serial number parsed once, used whenever books are put in serial number order.
+  private long serialKey;
+  // Changed while the Library holds the book's lock, but read without it by listings, so kept volatile.
+  private volatile boolean isRented;
+  private volatile Member renter;
+  // The rental history is a plain array with a count rather than a List, as there is one per book.
+  private Member[] rentHistory;
+  private int rentHistorySize;
 
   /*
   Constructor
+  Throws: IllegalArgumentException if the serial number is not a number.
   */
   public Book(String title, String author, String genre, String serialNumber) {
+    this(title, author, genre, serialNumber, parseSerialNumber(serialNumber));
+  }
+
+  /*
+  Constructor for a serial number that has already been parsed, e.g. by ColumnarCatalog.
+  */
+  Book(String title, String author, String genre, String serialNumber, long serialKey) {
     this.title = title;
     this.author = author;
     this.genre = genre;
     this.serialNumber = serialNumber;
+    this.serialKey = serialKey;
     
     this.isRented = false;
     this.renter = null;
-    this.rentHistory = new ArrayList<Member>();
+    this.rentHistory = NO_MEMBERS;
+    this.rentHistorySize = 0;
   }
 
   /*
@@ -58,6 +81,30 @@ public class Book {
   public String getSerialNumber(){
     return this.serialNumber;
   }
+
+  /*
+  Purpose: Returns the numeric value of the serial number (long), which gives the order of books by serial number.
+  */
+  public long getSerialKey(){
+    return this.serialKey;
+  }
+
+  /*
+  Purpose: Helper method for the constructor that parses a serial number into its numeric value.
+  Arguments: serialNumber (String)
+  Returns: The numeric value of the serial number (long)
+  Throws: IllegalArgumentException if the serial number is null or not a number.
+  */
+  private static long parseSerialNumber(String serialNumber) {
+    if (serialNumber == null) {
+      throw new IllegalArgumentException("Missing serial number.");
+    }
+    try {
+      return Long.parseLong(serialNumber);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid serial number: " + serialNumber);
+    }
+  }
   
   /*
   Purpose: Returns if the books is currenlty rented.
@@ -87,8 +134,10 @@ public class Book {
     }
     String retString = String.format("%s: %s (%s, %s)", this.serialNumber, this.title,this.author,this.genre);
 
-    if (this.isRented) {
-      retString += String.format("%nRented by: %s.", renter.getMemberNumber());
+    // Reads the renter once, as the book may be returned by another thread while this runs
+    Member currentRenter = this.renter;
+    if (currentRenter != null) {
+      retString += String.format("%nRented by: %s.", currentRenter.getMemberNumber());
     } else {
       retString += String.format("%nCurrently available.");
     }
@@ -111,45 +160,98 @@ public class Book {
 
   /*
   Purpose: Returns the renter history, in chronological order.
-  Returns: The list of members who have rented the book. (List<Member>)
+  Returns: The list of members who have rented the book. (List<Member>) The list is a read only view of the history.
   */
   public List<Member> renterHistory() {
-    return this.rentHistory;
+    return Collections.unmodifiableList(Arrays.asList(this.rentHistory).subList(0, this.rentHistorySize));
+  }
+
+  /*
+  Purpose: Replaces the renter history with the given members, in chronological order, 
+    for restoring a book saved by the Library's journal.
+  Arguments: members - The members who have rented the book (Member[])
+  */
+  void restoreHistory(Member[] members) {
+    this.rentHistory = members.length == 0 ? NO_MEMBERS : members.clone();
+    this.rentHistorySize = members.length;
+  }
+
+  /*
+  Purpose: Replaces the author and genre with equal instances already held by the Library,
+    so books by the same author or in the same genre share one String.
+  Arguments: author - The author, equal to the book's (String), genre - The genre, equal to the book's (String)
+  */
+  void shareValues(String author, String genre) {
+    this.author = author;
+    this.genre = genre;
   }
 
   /* 
-  Purpose: Helper Method for reading files - takes in the file, confirms it exists and returns a scanner.
+  Purpose: Helper Method for reading files - takes in the file, confirms it exists and returns a csv reader.
   Arguments: filename (String)
-  Returns: Scanner either of the file, or null if the file doesn't exist
+  Returns: BookCsvReader either of the file, or null if the file doesn't exist
   */
-  private static Scanner openFileRead (String filename) {
+  private static BookCsvReader openFileRead (String filename) {
     try {
-        File myFile = new File(filename);
-        Scanner scan = new Scanner(myFile); 
-        return scan;
+      return BookCsvReader.open(filename);
 
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       return null;
     }
   }
 
-  /* Purpose: Helper Method for writing to files - takes in the file, and returns a Printwriter.
-  Arguments: filename (String)
-  Returns: Printwriter of the file, or null if the file doesn't exist
+  /* 
+  Purpose: Helper Method for reading files - creates a book from the current record of a csv reader.
+    A row whose serial number is not a number is reported on standard error and skipped.
+  Arguments: csv (BookCsvReader)
+  Returns: Book, or null if the record does not have all four columns (e.g. a blank line) or has an invalid serial number
+  */
+  static Book fromRecord(BookCsvReader csv) {
+    return fromRecord(csv, null, System.err::println);
+  }
+
+  /* 
+  Purpose: Creates a book from the current record of a csv reader, as for fromRecord(csv), sharing its author 
+    and genre with the books read before it through the given pool. Titles are mostly distinct, so they are 
+    not pooled.
+  Arguments: csv (BookCsvReader), values - The pool for the load the record is part of, or null to not share 
+    values (StringPool)
+  Returns: Book, or null if the record does not have all four columns or has an invalid serial number
   */
-  private static PrintWriter openFileWrite(String filename) {
+  static Book fromRecord(BookCsvReader csv, StringPool values) {
+    return fromRecord(csv, values, System.err::println);
+  }
+
+  /* 
+  Purpose: Creates a book from the current record of a csv reader, as for fromRecord(csv, values), passing the 
+    message for a skipped row to the given consumer instead of printing it.
+  Arguments: csv (BookCsvReader), values - The pool to share the author and genre through, or null (StringPool),
+    skipped - The consumer to pass each message to (Consumer<String>)
+  Returns: Book, or null if the record does not have all four columns or has an invalid serial number
+  */
+  static Book fromRecord(BookCsvReader csv, StringPool values, Consumer<String> skipped) {
+    if (csv.fieldCount() < 4) {
+      return null;
+    }
+    String author = csv.field(2);
+    String genre = csv.field(3);
+    if (values != null) {
+      author = values.canonical(author);
+      genre = values.canonical(genre);
+    }
     try {
-      File myFile = new File(filename);
-      PrintWriter writer = new PrintWriter(myFile); 
-      return writer;
+      return new Book(csv.field(1), author, genre, csv.field(0));
 
-    } catch (FileNotFoundException e) {
-        return null;
+    } catch (IllegalArgumentException e) {
+      skipped.accept("Skipping row. " + e.getMessage());
+      return null;
     }
   }
 
   /*
   Purpose: Retrieves the book from the given csv file based on its serial number. 
+    If the sidecar index is enabled (see BookFileIndex), the row is found through the index instead of 
+    scanning the file.
   Arguments: filename - The csv file containing a book collection, serialNumber - The serial number for the book.
   Returns: Book object with the information read in from the csv
   */
@@ -157,23 +259,64 @@ public class Book {
     if (filename == null || serialNumber == null) {
       return null;
     }
-    Scanner scan = openFileRead(filename);
-    if (scan == null) {
-      return null;
+    if (BookFileIndex.ENABLED) {
+      return BookFileIndex.readBook(filename, serialNumber);
     }
-    scan.nextLine(); //Skips the title line.
-
-    while (scan.hasNextLine()) {
-      String[] line = scan.nextLine().split(",");
+    try (BookCsvReader csv = openFileRead(filename)) {
+      if (csv == null) {
+        return null;
+      }
+      csv.next(); //Skips the title line.
 
-      if (line[0].equals(serialNumber)) {
-        return new Book(line[1], line[2], line[3], line[0]);
+      while (csv.next()) {
+        if (csv.field(0).equals(serialNumber)) {
+          return fromRecord(csv);
+        }
       }
 
+    } catch (IOException e) {
+      return null;
     }
     return null;
   }
   
+  /*
+  Purpose: Retrieves all the books with the given serial numbers from the csv file, reading the file only once.
+    If a serial number appears more than once in the file, the first row is used (as with readBook).
+  Arguments: filename - The csv file containing a book collection, serialNumbers - The serial numbers to find.
+  Returns: A map from serial number to the Book found for it, or null if the file can't be read. 
+    Serial numbers that are not in the file are not in the map.
+  */
+  public static Map<String,Book> readBooks(String filename, Set<String> serialNumbers) {
+    if (filename == null || serialNumbers == null) {
+      return null;
+    }
+    Map<String,Book> found = new HashMap<String,Book>();
+    StringPool values = new StringPool();
+
+    try (BookCsvReader csv = openFileRead(filename)) {
+      if (csv == null) {
+        return null;
+      }
+      csv.next(); //Skips the title line.
+
+      // Stops early once every serial number has been found
+      while (found.size() < serialNumbers.size() && csv.next()) {
+        String serialNumber = csv.field(0);
+        if (serialNumbers.contains(serialNumber) && !found.containsKey(serialNumber)) {
+          Book b = fromRecord(csv, values);
+          if (b != null) {
+            found.put(serialNumber, b);
+          }
+        }
+      }
+
+    } catch (IOException e) {
+      return null;
+    }
+    return found;
+  }
+
   /*
   Purpose: Reads in the collection of books from the given csv file. 
   Arguments: filename - The csv file containing a book collection.
@@ -185,37 +328,133 @@ public class Book {
     }
     List<Book> ls = new ArrayList<Book>();
 
-    Scanner scan = openFileRead(filename);
-    if (scan == null) {
+    if (streamBookCollection(filename, ls::add) == -1) {
       return null;
     }
+    return ls;
+  }
 
-    scan.nextLine(); // Skips the title line.
+  /*
+  Purpose: Reads in the collection of books from the given csv file, passing each book to the given 
+    consumer as soon as its row is parsed, so the whole collection never has to be held in a list.
+    Rows that do not have all four columns (e.g. blank lines) are skipped.
+  Arguments: filename - The csv file containing a book collection, sink - The consumer to pass each book to.
+  Returns: The number of rows read, not counting the title line, or -1 if the file can't be read (long)
+  */
+  public static long streamBookCollection(String filename, Consumer<Book> sink) {
+    return streamBookCollection(filename, new StringPool(), sink);
+  }
 
-    while (scan.hasNextLine()) {
-      String[] line = scan.nextLine().split(",");
-        ls.add(new Book(line[1], line[2], line[3], line[0]));
+  /*
+  Purpose: Reads in the collection of books from the given csv file as for streamBookCollection(filename, sink),
+    sharing repeated authors and genres through the given pool. The pool only needs to live as long as the load.
+  Arguments: filename - The csv file containing a book collection, values - The pool (StringPool), 
+    sink - The consumer to pass each book to.
+  Returns: The number of rows read, not counting the title line, or -1 if the file can't be read (long)
+  */
+  public static long streamBookCollection(String filename, StringPool values, Consumer<Book> sink) {
+    if (filename == null || values == null || sink == null) {
+      return -1;
+    }
+
+    try (BookCsvReader csv = openFileRead(filename)) {
+      if (csv == null) {
+        return -1;
+      }
+      csv.next(); // Skips the title line.
+
+      while (csv.next()) {
+        Book b = fromRecord(csv, values);
+        if (b != null) {
+          sink.accept(b);
+        }
+      }
+      return Math.max(csv.rowNumber() - 1, 0);
+
+    } catch (IOException e) {
+      return -1;
     }
-    return ls;
   }
 
   /*
   Purpose: Save the collection of books to the given file.
+    The file is replaced in one step using AtomicFile, so a failed save never leaves a half written 
+    collection behind, and the file keeps its permissions.
   Arguments: filename - The csv file to write to, books - The collection of books to write to file.
-  Returns: A list of Book objects
+  Returns: Whether the collection was saved (boolean)
   */
-  public static void saveBookCollection​(String filename, Collection<Book> books) {
+  public static boolean saveBookCollection​(String filename, Collection<Book> books) {
     if (filename == null || books == null) {
-      return;
+      return false;
     }
-    PrintWriter writer = openFileWrite(filename);
-    writer.println("serialNumber,title,author,genre");
 
+    try {
+      AtomicFile.write(filename, out -> {
+        BookCsvWriter writer = new BookCsvWriter(out);
+        try {
+          writer.field("serialNumber");
+          writer.field("title");
+          writer.field("author");
+          writer.field("genre");
+          writer.endRow();
+          writeRows(writer, books);
+        } finally {
+          writer.close();
+        }
+      });
+      return true;
+
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /*
+  Purpose: Adds books to the end of a collection file written by saveBookCollection, 
+    for saving only the books added since the file was last saved.
+    If writing fails part way through, the file is cut back to its old length, so it never ends in a partial row.
+  Arguments: filename - The csv file to add to, books - The books to add.
+  Returns: Whether the books were added (boolean)
+  */
+  public static boolean appendBookCollection(String filename, Collection<Book> books) {
+    if (filename == null || books == null) {
+      return false;
+    }
+    if (books.isEmpty()) {
+      return true;
+    }
+
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+      long length = channel.size();
+      try {
+        channel.position(length);
+        BookCsvWriter writer = new BookCsvWriter(Channels.newOutputStream(channel));
+        writeRows(writer, books);
+        writer.flush();
+        channel.force(false);
+      } catch (IOException e) {
+        channel.truncate(length);
+        throw e;
+      }
+      return true;
+
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /*
+  Purpose: Helper Method for writing to files - writes one csv row per book.
+  Arguments: writer (BookCsvWriter), books - The books to write.
+  */
+  private static void writeRows(BookCsvWriter writer, Collection<Book> books) throws IOException {
     for (Book b: books) {
-      String formattedString = String.format("%s,%s,%s,%s", b.serialNumber, b.title, b.author, b.genre);
-      writer.println(formattedString);
+      writer.field(b.serialNumber);
+      writer.field(b.title);
+      writer.field(b.author);
+      writer.field(b.genre);
+      writer.endRow();
     }
-    writer.close();
   }
 
   /* 
@@ -258,26 +497,45 @@ public class Book {
 
     this.renter = null;
     this.isRented = false;
-    this.rentHistory.add(member);
+    if (this.rentHistorySize == this.rentHistory.length) {
+      this.rentHistory = Arrays.copyOf(this.rentHistory, Math.max(this.rentHistorySize + (this.rentHistorySize >> 1), 4));
+    }
+    this.rentHistory[this.rentHistorySize++] = member;
     return true;
   }
 
+  /*
+  Purpose: Compares two books by serial number, for sorting books in serial number order.
+  Arguments: a, b - The books to compare.
+  Returns: A negative number, zero or a positive number if a's serial number is less than, equal to or greater than b's (int).
+  */
+  static int compareSerialNumbers(Book a, Book b) {
+    return Long.compare(a.serialKey, b.serialKey);
+  }
+
   /* 
   Purpose:  A helper method that implements an insertion sort that will 
             insert a book object into an array based on its serial number. 
+            The list must already be sorted by serial number.
   Arguments:  books - The list of books the book is to be inserted into
               book - The book to be inserted
   */
-  private static void addSorted(List<Book> books, Book book) {
-    // Loops through each book in the list, and adds book immediately before the first 
-    // book it finds with a bigger serial number
-    for (int i = 0; i < books.size(); i ++) {
-      if (Integer.parseInt(book.serialNumber) < Integer.parseInt(books.get(i).serialNumber)) {
-        books.add(i,book);
-        return;
+  static void addSorted(List<Book> books, Book book) {
+    long serial = book.serialKey;
+
+    // Binary searches for the first book with a bigger serial number, and adds book immediately 
+    // before it. Books with equal serial numbers keep the order they were added in.
+    int low = 0;
+    int high = books.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (serial < books.get(mid).serialKey) {
+        high = mid;
+      } else {
+        low = mid + 1;
       }
     }
-    books.add(book);
+    books.add(low, book);
   }
 
   /*
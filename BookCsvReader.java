@@ -0,0 +1,206 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class BookCsvReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private Reader in;
+  private char[] buffer;
+  private int position;
+  private int limit;
+
+  private char[] field;
+  private int fieldLength;
+  private String[] fields;
+  private int fieldCount;
+  private long rowNumber;
+  private boolean lineBreak;
+
+  /*
+  Constructor
+  Arguments: in - The reader to parse. It is read in large blocks, so it does not need to be buffered.
+  */
+  public BookCsvReader(Reader in) {
+    this.in = in;
+    this.buffer = new char[BUFFER_SIZE];
+    this.position = 0;
+    this.limit = 0;
+    this.field = new char[256];
+    this.fieldLength = 0;
+    this.fields = new String[8];
+    this.fieldCount = 0;
+    this.rowNumber = 0;
+    this.lineBreak = false;
+  }
+
+  /*
+  Purpose: Opens the given file for reading as UTF-8.
+  Arguments: filename - The csv file to open.
+  Returns: A reader for the file (BookCsvReader).
+  Throws: IOException if the file does not exist or cannot be read.
+  */
+  public static BookCsvReader open(String filename) throws IOException {
+    return new BookCsvReader(new InputStreamReader(Files.newInputStream(Paths.get(filename)), StandardCharsets.UTF_8));
+  }
+
+  /*
+  Purpose: Reads the next record of the file, following RFC 4180: fields are separated by commas,
+           records by LF or CRLF, and a field wrapped in double quotes may contain commas, line breaks
+           and doubled quotes ("") standing for a single quote.
+           A blank line is read as a record with one empty field.
+  Returns: Whether a record was read (boolean). False once the end of the file is reached.
+  */
+  public boolean next() throws IOException {
+    this.fieldCount = 0;
+    this.fieldLength = 0;
+
+    if (this.position >= this.limit && !this.fill()) {
+      return false;
+    }
+    this.rowNumber++;
+
+    boolean quoted = false;
+    while (true) {
+      if (this.position >= this.limit && !this.fill()) {
+        this.endField();
+        this.lineBreak = false;
+        return true;
+      }
+
+      char c = this.buffer[this.position++];
+
+      if (quoted) {
+        if (c != '"') {
+          this.append(c);
+        } else if (this.peek() == '"') {
+          this.position++;
+          this.append('"');
+        } else {
+          quoted = false;
+        }
+
+      } else if (c == ',') {
+        this.endField();
+      } else if (c == '\n') {
+        this.endField();
+        this.lineBreak = true;
+        return true;
+      } else if (c == '\r') {
+        if (this.peek() == '\n') {
+          this.position++;
+        }
+        this.endField();
+        this.lineBreak = true;
+        return true;
+      } else if (c == '"' && this.fieldLength == 0) {
+        quoted = true;
+      } else {
+        this.append(c);
+      }
+    }
+  }
+
+  /*
+  Purpose: Returns the number of fields in the current record.
+  */
+  public int fieldCount() {
+    return this.fieldCount;
+  }
+
+  /*
+  Purpose: Returns the field at the given index of the current record.
+  Arguments: index - The index of the field (int).
+  */
+  public String field(int index) {
+    return this.fields[index];
+  }
+
+  /*
+  Purpose: Returns whether the current record ended with a line break, rather than at the end of the input
+           (which includes input that ends inside a quoted field).
+  */
+  public boolean endedWithLineBreak() {
+    return this.lineBreak;
+  }
+
+  /*
+  Purpose: Returns the number of records read so far, including the title line.
+  */
+  public long rowNumber() {
+    return this.rowNumber;
+  }
+
+  /*
+  Purpose: Closes the underlying reader.
+  */
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  /*
+  Purpose: Formats a value as a csv field, wrapping it in double quotes if it contains a comma,
+           double quote or line break, so that it reads back as the same value.
+  Arguments: value - The value to format (String).
+  Returns: The csv field (String).
+  */
+  public static String escape(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+      }
+    }
+    return value;
+  }
+
+  /*
+  Purpose: Helper method that refills the buffer from the reader.
+  Returns: Whether any characters were read (boolean).
+  */
+  private boolean fill() throws IOException {
+    int read = this.in.read(this.buffer, 0, this.buffer.length);
+    while (read == 0) {
+      read = this.in.read(this.buffer, 0, this.buffer.length);
+    }
+    this.position = 0;
+    this.limit = Math.max(read, 0);
+    return read > 0;
+  }
+
+  /*
+  Purpose: Helper method that returns the next character without consuming it, or -1 at the end of the file.
+  */
+  private int peek() throws IOException {
+    if (this.position >= this.limit && !this.fill()) {
+      return -1;
+    }
+    return this.buffer[this.position];
+  }
+
+  /*
+  Purpose: Helper method that adds a character to the field currently being read.
+  */
+  private void append(char c) {
+    if (this.fieldLength == this.field.length) {
+      this.field = Arrays.copyOf(this.field, this.field.length * 2);
+    }
+    this.field[this.fieldLength++] = c;
+  }
+
+  /*
+  Purpose: Helper method that finishes the field currently being read and adds it to the record.
+  */
+  private void endField() {
+    if (this.fieldCount == this.fields.length) {
+      this.fields = Arrays.copyOf(this.fields, this.fields.length * 2);
+    }
+    this.fields[this.fieldCount++] = new String(this.field, 0, this.fieldLength);
+    this.fieldLength = 0;
+  }
+}
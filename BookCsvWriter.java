@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class BookCsvWriter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private OutputStream out;
+  private byte[] buffer;
+  private int position;
+  private boolean rowStarted;
+
+  /*
+  Constructor
+  Arguments: out - The stream to write UTF-8 csv rows to (OutputStream). It is closed by close().
+  */
+  public BookCsvWriter(OutputStream out) {
+    this.out = out;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.position = 0;
+    this.rowStarted = false;
+  }
+
+  /*
+  Purpose: Adds a field to the current row, separated from the previous field by a comma.
+           The field is quoted in the same cases as BookCsvReader.escape, and is encoded straight
+           into the output buffer, so no strings are created for it.
+  Arguments: value - The field (String).
+  */
+  public void field(String value) throws IOException {
+    if (this.rowStarted) {
+      this.put((byte) ',');
+    }
+    this.rowStarted = true;
+
+    boolean quoted = false;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        quoted = true;
+        break;
+      }
+    }
+
+    if (quoted) {
+      this.put((byte) '"');
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        // Rare, so the rest of the field is left to the charset encoder
+        String rest = value.substring(i);
+        if (quoted) {
+          rest = rest.replace("\"", "\"\"");
+        }
+        this.put(rest.getBytes(StandardCharsets.UTF_8));
+        break;
+      }
+      if (c == '"') {
+        this.put((byte) '"');
+      }
+      this.put((byte) c);
+    }
+    if (quoted) {
+      this.put((byte) '"');
+    }
+  }
+
+  /*
+  Purpose: Ends the current row with the platform line separator, as PrintWriter.println does.
+  */
+  public void endRow() throws IOException {
+    this.put(LINE_SEPARATOR);
+    this.rowStarted = false;
+  }
+
+  /*
+  Purpose: Writes out anything still in the buffer.
+  */
+  public void flush() throws IOException {
+    this.out.write(this.buffer, 0, this.position);
+    this.position = 0;
+    this.out.flush();
+  }
+
+  /*
+  Purpose: Writes out anything still in the buffer and closes the stream.
+  */
+  public void close() throws IOException {
+    this.flush();
+    this.out.close();
+  }
+
+  /*
+  Purpose: Helper method that adds a byte to the buffer, writing the buffer out when it is full.
+  */
+  private void put(byte b) throws IOException {
+    if (this.position == this.buffer.length) {
+      this.out.write(this.buffer, 0, this.position);
+      this.position = 0;
+    }
+    this.buffer[this.position++] = b;
+  }
+
+  /*
+  Purpose: Helper method that adds some bytes to the buffer.
+  */
+  private void put(byte[] bytes) throws IOException {
+    for (byte b: bytes) {
+      this.put(b);
+    }
+  }
+}
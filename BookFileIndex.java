@@ -0,0 +1,317 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class BookFileIndex {
+  // Set with -Dlibrary.bookIndex=true to look up ADD BOOK serial numbers through a sidecar index file.
+  public static final boolean ENABLED = Boolean.getBoolean("library.bookIndex");
+  public static final String SUFFIX = ".idx";
+
+  private static final int MAGIC = 0x4C494458; // "LIDX"
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // The index of the csv file read from last, by absolute path. Only one is kept in memory, as an index holds 
+  //  an entry for every row of its file. Guarded by lock, a lock rather than a monitor as it is held while 
+  //  indexes are read, built and saved, which would pin a virtual thread (e.g. a LibraryServer session).
+  private static final ReentrantLock lock = new ReentrantLock();
+  private static Path loadedFile;
+  private static BookFileIndex loadedIndex;
+
+  private long fileSize;
+  private long lastModified;
+  private Map<String,Long> offsets;
+
+  /*
+  Constructor
+  */
+  private BookFileIndex(long fileSize, long lastModified, Map<String,Long> offsets) {
+    this.fileSize = fileSize;
+    this.lastModified = lastModified;
+    this.offsets = offsets;
+  }
+
+  /*
+  Purpose: Retrieves the book from the given csv file based on its serial number, by seeking straight
+    to its row using the index for the file.
+    The index is loaded from [filename].idx, or built and saved there if the sidecar file is missing
+    or was made for a different size or modification time of the csv file. If the row the index points to 
+    is not the book's, the file has changed without its size or modification time changing (e.g. it was 
+    rewritten within the modification time's granularity), so the index is rebuilt once and tried again.
+  Arguments: filename - The csv file containing a book collection, serialNumber - The serial number for the book.
+  Returns: Book object with the information read in from the csv, or null if the file or book doesn't exist
+  */
+  public static Book readBook(String filename, String serialNumber) {
+    if (filename == null || serialNumber == null) {
+      return null;
+    }
+    Path file = Paths.get(filename).toAbsolutePath();
+
+    try {
+      BookFileIndex index = forFile(file);
+      for (int attempt = 0; ; attempt++) {
+        Long offset = index.offsets.get(serialNumber);
+        if (offset == null) {
+          return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          channel.position(offset);
+          BookCsvReader csv = new BookCsvReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+          if (csv.next() && csv.field(0).equals(serialNumber)) {
+            return Book.fromRecord(csv);
+          }
+        }
+        if (attempt > 0) {
+          return null;
+        }
+        index = rebuild(file);
+      }
+
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /*
+  Purpose: Helper method that returns an up to date index for the file, using the one already loaded
+    in this process or the sidecar file if they match the file's size and modification time.
+  Arguments: file - The absolute path of the csv file (Path).
+  Returns: The index (BookFileIndex).
+  */
+  private static BookFileIndex forFile(Path file) throws IOException {
+    lock.lock();
+    try {
+      long size = Files.size(file);
+      long modified = Files.getLastModifiedTime(file).toMillis();
+
+      if (file.equals(loadedFile) && loadedIndex.matches(size, modified)) {
+        return loadedIndex;
+      }
+
+      BookFileIndex index = load(Paths.get(file.toString() + SUFFIX));
+      if (index == null || !index.matches(size, modified)) {
+        return rebuild(file);
+      }
+      loadedFile = file;
+      loadedIndex = index;
+      return index;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Helper method that builds the index for a file from scratch, whatever index it already has, and 
+    saves it as the file's sidecar.
+  Arguments: file - The absolute path of the csv file (Path).
+  Returns: The new index (BookFileIndex).
+  */
+  private static BookFileIndex rebuild(Path file) throws IOException {
+    lock.lock();
+    try {
+      long size = Files.size(file);
+      long modified = Files.getLastModifiedTime(file).toMillis();
+
+      BookFileIndex index = build(file, size, modified);
+      try {
+        index.save(Paths.get(file.toString() + SUFFIX));
+      } catch (IOException e) {
+        // The index still works from memory if the sidecar can't be written (e.g. a read-only directory).
+      }
+      loadedFile = file;
+      loadedIndex = index;
+      return index;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Helper method that checks whether the index was built for a file of the given size and modification time.
+  */
+  private boolean matches(long size, long modified) {
+    return this.fileSize == size && this.lastModified == modified;
+  }
+
+  /*
+  Purpose: Helper method that builds the index by scanning the bytes of the csv file once, recording the
+    offset of the first row for every serial number. Quoted fields are followed the way BookCsvReader reads
+    them, so that commas and line breaks inside them are not mistaken for separators: a quote only starts a
+    quoted field at the start of the field, and inside one a doubled quote stands for a single quote.
+  Arguments: file - The csv file (Path), size and modified - The size and modification time of the file (long).
+  Returns: The new index (BookFileIndex).
+  */
+  private static BookFileIndex build(Path file, long size, long modified) throws IOException {
+    Map<String,Long> offsets = new HashMap<String,Long>();
+
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      byte[] serial = new byte[64];
+      int serialLength = 0;
+
+      long offset = 0;
+      long rowStart = 0;
+      int row = 0;
+      int fieldLength = 0;
+      boolean quoted = false;
+      // A quote inside a quoted field, which is either the first of a doubled quote or the end of the field
+      boolean closing = false;
+      // A row ended with a carriage return, so a line feed straight after it belongs to the same line break
+      boolean afterReturn = false;
+      boolean inSerial = true;
+
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        for (int i = 0; i < read; i++, offset++) {
+          byte b = buffer[i];
+
+          if (afterReturn) {
+            afterReturn = false;
+            if (b == '\n') {
+              rowStart = offset + 1;
+              continue;
+            }
+          }
+
+          if (closing) {
+            closing = false;
+            if (b == '"') {
+              fieldLength++;
+              if (inSerial) {
+                serial = append(serial, serialLength++, b);
+              }
+              continue;
+            }
+            quoted = false;
+          }
+
+          if (quoted) {
+            if (b == '"') {
+              closing = true;
+            } else {
+              fieldLength++;
+              if (inSerial) {
+                serial = append(serial, serialLength++, b);
+              }
+            }
+          } else if (b == ',') {
+            inSerial = false;
+            fieldLength = 0;
+          } else if (b == '\n' || b == '\r') {
+            addRow(offsets, row++, serial, serialLength, rowStart);
+            serialLength = 0;
+            fieldLength = 0;
+            inSerial = true;
+            afterReturn = b == '\r';
+            rowStart = offset + 1;
+          } else if (b == '"' && fieldLength == 0) {
+            quoted = true;
+          } else {
+            fieldLength++;
+            if (inSerial) {
+              serial = append(serial, serialLength++, b);
+            }
+          }
+        }
+      }
+      if (rowStart < offset) {
+        addRow(offsets, row, serial, serialLength, rowStart);
+      }
+    }
+    return new BookFileIndex(size, modified, offsets);
+  }
+
+  /*
+  Purpose: Helper method for build that records the offset of a row, skipping the title line and keeping
+    the first row for each serial number (the same row Book.readBook would find).
+  */
+  private static void addRow(Map<String,Long> offsets, int row, byte[] serial, int serialLength, long rowStart) {
+    if (row == 0 || serialLength == 0) {
+      return;
+    }
+    offsets.putIfAbsent(new String(serial, 0, serialLength, StandardCharsets.UTF_8), rowStart);
+  }
+
+  /*
+  Purpose: Helper method for build that appends a byte to the serial number buffer, growing it if needed.
+  */
+  private static byte[] append(byte[] serial, int length, byte b) {
+    if (length == serial.length) {
+      serial = Arrays.copyOf(serial, serial.length * 2);
+    }
+    serial[length] = b;
+    return serial;
+  }
+
+  /*
+  Purpose: Helper method that reads an index from a sidecar file.
+  Arguments: sidecar - The index file (Path).
+  Returns: The index (BookFileIndex), or null if the file doesn't exist or is not a valid index.
+  */
+  private static BookFileIndex load(Path sidecar) {
+    if (!Files.isRegularFile(sidecar)) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar), BUFFER_SIZE))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      long size = in.readLong();
+      long modified = in.readLong();
+      int count = in.readInt();
+      // Every entry takes at least 10 bytes, so a larger count is a damaged file, not something to allocate for
+      if (count < 0 || count > Files.size(sidecar) / 10) {
+        return null;
+      }
+
+      Map<String,Long> offsets = new HashMap<String,Long>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; i++) {
+        String serial = in.readUTF();
+        offsets.put(serial, in.readLong());
+      }
+      return new BookFileIndex(size, modified, offsets);
+
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /*
+  Purpose: Helper method that writes the index to a sidecar file. The file is replaced in one step using 
+    AtomicFile, so a crash while saving never leaves a truncated index.
+  Arguments: sidecar - The index file (Path).
+  */
+  private void save(Path sidecar) throws IOException {
+    AtomicFile.write(sidecar.toString(), file -> {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(this.fileSize);
+      out.writeLong(this.lastModified);
+      out.writeInt(this.offsets.size());
+
+      for (Map.Entry<String,Long> entry: this.offsets.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      out.close();
+    });
+  }
+}
@@ -0,0 +1,125 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class BookSet implements Iterable<Book> {
+  private static final Book[] EMPTY = new Book[0];
+  private static final int INITIAL_CAPACITY = 8;
+
+  // Open addressing table of books, compared by identity. Kept at most half full.
+  private Book[] table;
+  private int size;
+
+  /*
+  Constructor
+  */
+  public BookSet() {
+    this.table = EMPTY;
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Returns the number of books in the set.
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Returns whether the given book is in the set.
+  Arguments: book - The book to look for.
+  */
+  public boolean contains(Book book) {
+    if (book == null || this.size == 0) {
+      return false;
+    }
+    int mask = this.table.length - 1;
+    for (int i = slot(book, mask); this.table[i] != null; i = (i + 1) & mask) {
+      if (this.table[i] == book) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+  Purpose: Adds the given book to the set.
+  Arguments: book - The book to add.
+  Returns: Whether the book was added (false if it was already in the set) (boolean).
+  */
+  public boolean add(Book book) {
+    if (book == null) {
+      return false;
+    }
+    if ((this.size + 1) * 2 > this.table.length) {
+      this.resize(Math.max(this.table.length * 2, INITIAL_CAPACITY));
+    }
+
+    int mask = this.table.length - 1;
+    int i = slot(book, mask);
+    while (this.table[i] != null) {
+      if (this.table[i] == book) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    this.table[i] = book;
+    this.size++;
+    return true;
+  }
+
+  /*
+  Purpose: Returns an iterator over the books in the set, in no particular order.
+  */
+  public Iterator<Book> iterator() {
+    return new Iterator<Book>() {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        while (from < table.length && table[from] == null) {
+          from++;
+        }
+        return from;
+      }
+
+      public boolean hasNext() {
+        return this.next < table.length;
+      }
+
+      public Book next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Book b = table[this.next];
+        this.next = this.advance(this.next + 1);
+        return b;
+      }
+    };
+  }
+
+  /*
+  Purpose: Helper method that moves every book into a new table of the given capacity (a power of two).
+  */
+  private void resize(int capacity) {
+    Book[] old = this.table;
+    this.table = new Book[capacity];
+    int mask = capacity - 1;
+
+    for (Book b: old) {
+      if (b != null) {
+        int i = slot(b, mask);
+        while (this.table[i] != null) {
+          i = (i + 1) & mask;
+        }
+        this.table[i] = b;
+      }
+    }
+  }
+
+  /*
+  Purpose: Helper method that returns the first table slot to try for a book.
+  */
+  private static int slot(Book book, int mask) {
+    int h = System.identityHashCode(book);
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class CatalogKiosk {
+  public static final String HELP_STRING = "EXIT ends the library process\nCOMMANDS outputs this " +
+    "help string\n\nLIST ALL [LONG] outputs either the short or long string for all books\nLIST " +
+    "GENRES outputs the name of every genre in the catalog\nLIST AUTHORS outputs the name of every " +
+    "author in the catalog\n\nGENRE <genre> outputs the short string of every book with the specified " +
+    "genre\nAUTHOR <author> outputs the short string of every book by the specified author\n\nBOOK " +
+    "<serialNumber> [LONG] outputs either the short or long string for the specified book";
+
+  private MappedCatalog catalog;
+  private PrintStream out;
+
+  /*
+  Constructor
+  Arguments: catalog - The catalog to answer commands from (MappedCatalog), out - Where to print output (PrintStream).
+  */
+  public CatalogKiosk(MappedCatalog catalog, PrintStream out) {
+    this.catalog = catalog;
+    this.out = out;
+  }
+
+  /*
+  Purpose: Takes user input from the given reader and runs each command against the catalog, with the same
+           prompts and output as Library.run(). Only the commands that read the catalog are available;
+           the others do nothing, as unknown commands do in the Library.
+  Arguments: keyboard (BufferedReader) - The user input, one command per line
+  */
+  public void run(BufferedReader keyboard) {
+    this.out.print("user: ");
+    this.out.flush();
+
+    try {
+      String commandString;
+      while ((commandString = keyboard.readLine()) != null) {
+        CommandLine command = CommandLine.parse(commandString);
+
+        if (command.is(0, "EXIT")) {
+          this.out.println("Ending Library process.");
+          this.out.flush();
+          return;
+        }
+
+        if (command.size() > 0) {
+          Handler handler = COMMAND_TABLE.get(command, 0);
+          if (handler != null) {
+            handler.run(this, command);
+          }
+        }
+        this.out.println();
+        this.out.print("user: ");
+        this.out.flush();
+      }
+    } catch (IOException e) {
+      System.err.println("Unable to read commands: " + e.getMessage());
+    }
+    this.out.flush();
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  Purpose: Prints the short or long string of every book in catalog order, as Library.getAllBooks does.
+           Every book is shown as available, as the catalog does not record loans.
+  Arguments: fullString (boolean) - Whether to print short or long strings
+  */
+  public void getAllBooks(boolean fullString) {
+    if (this.catalog.size() < 1) {
+      this.out.println("No books in system.");
+      return;
+    }
+
+    for (int i = 0; i < this.catalog.size(); i++) {
+      if (i > 0) {
+        this.out.println();
+        if (fullString) {
+          this.out.println();
+        }
+      }
+      this.out.print(fullString ? this.catalog.longString(i) : this.catalog.shortString(i));
+    }
+    this.out.println();
+  }
+
+  /*
+  Purpose: Prints every genre or every author in alphabetical order, as Library.getGenres and getAuthors do.
+  Arguments: genres (boolean) - Whether to print the genres rather than the authors
+  */
+  public void getNames(boolean genres) {
+    if (this.catalog.size() < 1) {
+      this.out.println("No books in system.");
+      return;
+    }
+
+    for (String name: genres ? this.catalog.genres() : this.catalog.authors()) {
+      this.out.println(name);
+    }
+  }
+
+  /*
+  Purpose: Prints the short string of every book in a genre, in serial number order, as Library.getBooksByGenre does.
+  Arguments: genre (String) - The genre to filter by
+  */
+  public void getBooksByGenre(String genre) {
+    if (this.catalog.size() < 1) {
+      this.out.println("No books in system.");
+      return;
+    }
+
+    int[] books = this.catalog.booksByGenre(genre);
+    if (books.length < 1) {
+      this.out.printf("No books with genre %s.%n", genre);
+      return;
+    }
+    for (int book: books) {
+      this.out.println(this.catalog.shortString(book));
+    }
+  }
+
+  /*
+  Purpose: Prints the short string of every book by an author, in serial number order, as Library.getBooksByAuthor does.
+  Arguments: author (String) - The author to filter by
+  */
+  public void getBooksByAuthor(String author) {
+    if (this.catalog.size() < 1) {
+      this.out.println("No books in system.");
+      return;
+    }
+
+    int[] books = this.catalog.booksByAuthor(author);
+    if (books.length < 1) {
+      this.out.printf("No books by %s.%n", author);
+      return;
+    }
+    for (int book: books) {
+      this.out.println(this.catalog.shortString(book));
+    }
+  }
+
+  /*
+  Purpose: Prints the short or long string of a book, as Library.getBook does.
+  Arguments: serialNumber (String) - The serial number of the book, fullString - Whether to print short or long string
+  */
+  public void getBook(String serialNumber, boolean fullString) {
+    if (this.catalog.size() < 1) {
+      this.out.println("No books in system.");
+      return;
+    }
+
+    int book = this.catalog.findBook(serialNumber);
+    if (book == -1) {
+      this.out.println("No such book in system.");
+      return;
+    }
+    this.out.println(fullString ? this.catalog.longString(book) : this.catalog.shortString(book));
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  A command handler, which runs a command on the kiosk once its first word has been matched.
+  */
+  private interface Handler {
+    void run(CatalogKiosk kiosk, CommandLine command);
+  }
+
+  // The handlers for every command, by first word (matched ignoring case, without copying the word).
+  private static final CommandTable<Handler> COMMAND_TABLE = new CommandTable<Handler>();
+
+  static {
+    COMMAND_TABLE.put("COMMANDS", (k, c) -> k.out.println(HELP_STRING));
+
+    // LIST ALL [LONG], LIST GENRES, LIST AUTHORS
+    COMMAND_TABLE.put("LIST", (k, c) -> {
+      if (c.is(1, "ALL")) {
+        k.getAllBooks(isLong(c));
+      } else if (c.is(1, "GENRES")) {
+        k.getNames(true);
+      } else if (c.is(1, "AUTHORS")) {
+        k.getNames(false);
+      }
+    });
+
+    // GENRE <genre>, AUTHOR <author>, where the genre or author can be multiple words
+    COMMAND_TABLE.put("GENRE", (k, c) -> {
+      if (c.size() >= 2) {
+        k.getBooksByGenre(c.rest(1));
+      }
+    });
+    COMMAND_TABLE.put("AUTHOR", (k, c) -> {
+      if (c.size() >= 2) {
+        k.getBooksByAuthor(c.rest(1));
+      }
+    });
+
+    // BOOK <serialNumber> [LONG]. BOOK HISTORY needs loans, which the catalog does not have.
+    COMMAND_TABLE.put("BOOK", (k, c) -> {
+      if (c.size() >= 2 && !c.is(1, "HISTORY")) {
+        k.getBook(c.upper(1), isLong(c));
+      }
+    });
+  }
+
+  /*
+  Purpose: A helper method for COMMAND_TABLE that checks for the LONG flag as the third word of a command.
+  */
+  private static boolean isLong(CommandLine c) {
+    return c.size() == 3 && c.is(2, "LONG");
+  }
+}
@@ -0,0 +1,156 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ColumnarCatalog extends AbstractList<Book> {
+  // Set with -Dlibrary.columnar=true to store the Library's books in a ColumnarCatalog.
+  public static final boolean ENABLED = Boolean.getBoolean("library.columnar");
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // One entry per book in each column, by slot (the position the book was added in).
+  private long[] serialKeys;
+  private String[] serialNumbers;
+  private int[] titles;
+  private int[] authors;
+  private int[] genres;
+  private int size;
+
+  private StringDictionary titleDictionary;
+  private StringDictionary authorDictionary;
+  private StringDictionary genreDictionary;
+
+  // Books that have been rented are kept as objects, as they hold the renter and rental history.
+  // Books can be pinned while other threads read the catalog, so the column is an atomic array.
+  private AtomicReferenceArray<Book> pinned;
+
+  /*
+  Constructor
+  */
+  public ColumnarCatalog() {
+    this.serialKeys = new long[INITIAL_CAPACITY];
+    this.serialNumbers = new String[INITIAL_CAPACITY];
+    this.titles = new int[INITIAL_CAPACITY];
+    this.authors = new int[INITIAL_CAPACITY];
+    this.genres = new int[INITIAL_CAPACITY];
+    this.size = 0;
+
+    this.titleDictionary = new StringDictionary();
+    this.authorDictionary = new StringDictionary();
+    this.genreDictionary = new StringDictionary();
+
+    this.pinned = new AtomicReferenceArray<Book>(INITIAL_CAPACITY);
+  }
+
+  /*
+  Purpose: Returns the number of books in the catalog.
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Adds a book to the end of the catalog, storing its fields in the columns.
+           The Book object itself is only kept if it is rented or has a rental history.
+  Arguments: book - The book to add.
+  Returns: true
+  */
+  public boolean add(Book book) {
+    if (this.size == this.serialKeys.length) {
+      int capacity = this.size + (this.size >> 1);
+      this.serialKeys = Arrays.copyOf(this.serialKeys, capacity);
+      this.serialNumbers = Arrays.copyOf(this.serialNumbers, capacity);
+      this.titles = Arrays.copyOf(this.titles, capacity);
+      this.authors = Arrays.copyOf(this.authors, capacity);
+      this.genres = Arrays.copyOf(this.genres, capacity);
+
+      AtomicReferenceArray<Book> grown = new AtomicReferenceArray<Book>(capacity);
+      for (int i = 0; i < this.size; i++) {
+        grown.set(i, this.pinned.get(i));
+      }
+      this.pinned = grown;
+    }
+
+    int slot = this.size;
+    this.serialKeys[slot] = book.getSerialKey();
+    this.serialNumbers[slot] = book.getSerialNumber();
+    this.titles[slot] = this.titleDictionary.idOf(book.getTitle());
+    this.authors[slot] = this.authorDictionary.idOf(book.getAuthor());
+    this.genres[slot] = this.genreDictionary.idOf(book.getGenre());
+    this.size++;
+    this.modCount++;
+
+    if (book.isRented() || book.renterHistory().size() > 0) {
+      this.pinned.set(slot, book);
+    }
+    return true;
+  }
+
+  /*
+  Purpose: Removes every book from the catalog.
+  */
+  public void clear() {
+    this.serialKeys = new long[INITIAL_CAPACITY];
+    this.serialNumbers = new String[INITIAL_CAPACITY];
+    this.titles = new int[INITIAL_CAPACITY];
+    this.authors = new int[INITIAL_CAPACITY];
+    this.genres = new int[INITIAL_CAPACITY];
+    this.size = 0;
+    this.modCount++;
+
+    this.titleDictionary = new StringDictionary();
+    this.authorDictionary = new StringDictionary();
+    this.genreDictionary = new StringDictionary();
+
+    this.pinned = new AtomicReferenceArray<Book>(INITIAL_CAPACITY);
+  }
+
+  /*
+  Purpose: Returns the book in the given slot.
+           Books that have never been rented are created from the columns on each call, so changes to
+           them are not kept. Use pin() to get a book that is going to be rented.
+  Arguments: index - The slot of the book (int).
+  Returns: The book (Book).
+  */
+  public Book get(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+    }
+    Book b = this.pinned.get(index);
+    if (b != null) {
+      return b;
+    }
+    return this.materialize(index);
+  }
+
+  /*
+  Purpose: Returns the book in the given slot as an object that is kept by the catalog, so that
+           it can be rented and will be returned by every later call to get().
+           If two threads pin the same book at once, they both get the same object.
+  Arguments: index - The slot of the book (int).
+  Returns: The book (Book).
+  */
+  public Book pin(int index) {
+    Book b = this.get(index);
+    if (this.pinned.compareAndSet(index, null, b)) {
+      return b;
+    }
+    return this.pinned.get(index);
+  }
+
+  /*
+  Purpose: Returns the numeric serial number of the book in the given slot, without creating the book.
+  Arguments: index - The slot of the book (int).
+  */
+  public long serialKey(int index) {
+    return this.serialKeys[index];
+  }
+
+  /*
+  Purpose: Helper method that creates a book from the columns of the given slot.
+  */
+  private Book materialize(int index) {
+    return new Book(this.titleDictionary.get(this.titles[index]), this.authorDictionary.get(this.authors[index]),
+      this.genreDictionary.get(this.genres[index]), this.serialNumbers[index], this.serialKeys[index]);
+  }
+}
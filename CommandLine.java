@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+public class CommandLine {
+  private String line;
+  private int[] starts;
+  private int[] ends;
+  private int size;
+
+  /*
+  Constructor
+  */
+  private CommandLine(String line, int[] starts, int[] ends, int size) {
+    this.line = line;
+    this.starts = starts;
+    this.ends = ends;
+    this.size = size;
+  }
+
+  /*
+  Purpose: Splits a command into words in a single pass, recording where each word starts and ends
+           rather than copying it.
+           Words are separated by single spaces, the same as String.split(" "): two spaces in a row
+           give an empty word, and spaces at the end of the line are ignored.
+  Arguments: line - The command typed by the user (String).
+  Returns: The split command (CommandLine).
+  */
+  public static CommandLine parse(String line) {
+    int[] starts = new int[8];
+    int[] ends = new int[8];
+    int size = 0;
+    int lastWord = 0;
+
+    int start = 0;
+    int length = line.length();
+    for (int i = 0; i <= length; i++) {
+      if (i < length && line.charAt(i) != ' ') {
+        continue;
+      }
+
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = i;
+      size++;
+
+      if (i > start) {
+        lastWord = size;
+      }
+      start = i + 1;
+    }
+
+    // An empty line is one empty word, otherwise empty words at the end are dropped (as String.split does)
+    if (length > 0) {
+      size = lastWord;
+    }
+    return new CommandLine(line, starts, ends, size);
+  }
+
+  /*
+  Purpose: Returns the number of words in the command.
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Returns the word at the given index, as it was typed.
+  Arguments: index - The index of the word (int).
+  */
+  public String word(int index) {
+    return this.line.substring(this.starts[index], this.ends[index]);
+  }
+
+  /*
+  Purpose: Returns the word at the given index in upper case, for arguments such as serial and member
+           numbers that are not case sensitive.
+  Arguments: index - The index of the word (int).
+  */
+  public String upper(int index) {
+    return this.word(index).toUpperCase();
+  }
+
+  /*
+  Purpose: Checks whether the word at the given index is the given keyword, ignoring case,
+           without copying the word.
+  Arguments: index - The index of the word (int), keyword - The keyword in upper case (String).
+  Returns: Whether the word matches (boolean).
+  */
+  public boolean is(int index, String keyword) {
+    if (index >= this.size) {
+      return false;
+    }
+    int start = this.starts[index];
+    int length = this.ends[index] - start;
+    return length == keyword.length() && this.line.regionMatches(true, start, keyword, 0, length);
+  }
+
+  /*
+  Purpose: Returns all the words from the given index to the end of the command, separated by spaces
+           as they were typed, for multi word arguments such as names, authors and genres.
+  Arguments: index - The index of the first word (int).
+  Returns: The words (String), or an empty string if there are none.
+  */
+  public String rest(int index) {
+    if (index >= this.size) {
+      return "";
+    }
+    return this.line.substring(this.starts[index], this.ends[this.size - 1]);
+  }
+
+  /*
+  Purpose: Returns the words from the given index to the end of the command, as they were typed.
+  Arguments: index - The index of the first word (int).
+  */
+  public String[] words(int index) {
+    String[] words = new String[Math.max(this.size - index, 0)];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = this.word(index + i);
+    }
+    return words;
+  }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class CommandOutput extends OutputStream {
+  private static final int INITIAL_SIZE = 1 << 13;
+  // A buffer grown past this by a long listing is dropped once written out, so an idle session holds little memory
+  private static final int RETAINED_SIZE = 1 << 16;
+
+  private OutputStream target;
+  private byte[] buffer;
+  private int size;
+
+  /*
+  Constructor
+  Arguments: target - Where the output is written when it is flushed (OutputStream).
+  */
+  public CommandOutput(OutputStream target) {
+    this.target = target;
+    this.buffer = new byte[INITIAL_SIZE];
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Adds a byte to the output held in memory. This never blocks, so commands can print
+           while they hold the library's locks.
+  */
+  @Override
+  public void write(int b) {
+    this.ensureCapacity(1);
+    this.buffer[this.size++] = (byte) b;
+  }
+
+  /*
+  Purpose: Adds bytes to the output held in memory. This never blocks, so commands can print
+           while they hold the library's locks.
+  */
+  @Override
+  public void write(byte[] b, int off, int len) {
+    this.ensureCapacity(len);
+    System.arraycopy(b, off, this.buffer, this.size, len);
+    this.size += len;
+  }
+
+  /*
+  Purpose: Returns the number of bytes held in memory, waiting for flush().
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Writes the output held in memory to the target and flushes it. This can block for as long as
+           whoever reads the target (e.g. a client that stopped reading its connection) takes, so it must
+           only be called once a command has released its locks.
+  Throws: IOException if the target can't be written, in which case the held output is dropped.
+  */
+  @Override
+  public void flush() throws IOException {
+    try {
+      this.target.write(this.buffer, 0, this.size);
+    } finally {
+      this.size = 0;
+      if (this.buffer.length > RETAINED_SIZE) {
+        this.buffer = new byte[INITIAL_SIZE];
+      }
+    }
+    this.target.flush();
+  }
+
+  /*
+  Purpose: Writes out the output held in memory and closes the target.
+  */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.flush();
+    } finally {
+      this.target.close();
+    }
+  }
+
+  /*
+  Purpose: Helper method that grows the buffer to fit the given number of bytes more.
+  */
+  private void ensureCapacity(int more) {
+    if (this.size + more > this.buffer.length) {
+      this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + more));
+    }
+  }
+}
@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+public class CommandTable<T> {
+  private String[] keywords;
+  private Object[] handlers;
+  private int size;
+
+  /*
+  Constructor
+  */
+  public CommandTable() {
+    this.keywords = new String[8];
+    this.handlers = new Object[8];
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Adds the handler for a keyword, replacing the handler it already had if there is one.
+  Arguments: keyword - The keyword in upper case (String), handler - The handler (T).
+  */
+  public void put(String keyword, T handler) {
+    for (int i = 0; i < this.size; i++) {
+      if (this.keywords[i].equalsIgnoreCase(keyword)) {
+        this.handlers[i] = handler;
+        return;
+      }
+    }
+    if (this.size == this.keywords.length) {
+      this.keywords = Arrays.copyOf(this.keywords, this.size * 2);
+      this.handlers = Arrays.copyOf(this.handlers, this.size * 2);
+    }
+    this.keywords[this.size] = keyword;
+    this.handlers[this.size] = handler;
+    this.size++;
+  }
+
+  /*
+  Purpose: Returns the handler for the word at the given index of a command, matching it against the
+           keywords ignoring case without copying it out of the line (see CommandLine.is).
+           A table only holds a handful of keywords, so they are checked in turn, and most of them
+           are ruled out by their length alone.
+  Arguments: command - The split command (CommandLine), index - The index of the word (int).
+  Returns: The handler (T), or null if the word is not a keyword or the command has no word at the index.
+  */
+  @SuppressWarnings("unchecked")
+  public T get(CommandLine command, int index) {
+    for (int i = 0; i < this.size; i++) {
+      if (command.is(index, this.keywords[i])) {
+        return (T) this.handlers[i];
+      }
+    }
+    return null;
+  }
+}
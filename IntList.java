@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+public class IntList {
+  private static final int[] EMPTY = new int[0];
+
+  private int[] values;
+  private int size;
+
+  /*
+  Constructor
+  */
+  public IntList() {
+    this.values = EMPTY;
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Returns the number of values in the list.
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Returns the value at the given index.
+  Arguments: index - The index of the value (int).
+  */
+  public int get(int index) {
+    if (index >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+    }
+    return this.values[index];
+  }
+
+  /*
+  Purpose: Adds a value to the end of the list.
+  Arguments: value - The value to add (int).
+  */
+  public void add(int value) {
+    this.add(this.size, value);
+  }
+
+  /*
+  Purpose: Inserts a value at the given index, moving the values after it along by one.
+  Arguments: index - Where to insert the value (int), value - The value to insert (int).
+  */
+  public void add(int index, int value) {
+    if (index < 0 || index > this.size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + this.size);
+    }
+    if (this.size == this.values.length) {
+      this.values = Arrays.copyOf(this.values, Math.max(this.size + (this.size >> 1), 4));
+    }
+    System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+    this.values[index] = value;
+    this.size++;
+  }
+}
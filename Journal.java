@@ -0,0 +1,437 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+public class Journal {
+  // Record types. Each record is a type and a list of strings.
+  public static final byte MEMBER = 1;          // name, member number
+  public static final byte BOOK = 2;            // serial number, title, author, genre
+  public static final byte RENT = 3;            // member number, serial number
+  public static final byte RELINQUISH = 4;      // member number, serial number
+  public static final byte RELINQUISH_ALL = 5;  // member number
+  public static final byte BOOK_HISTORY = 6;    // serial number, member numbers in the order the book was returned
+  public static final byte MEMBER_HISTORY = 7;  // member number, serial numbers in the order they were returned
+
+  // The journal is compacted once it has this many records, and twice as many as its last compaction wrote.
+  private static final long COMPACT_MIN_RECORDS = 1 << 16;
+  private static final int BUFFER_SIZE = 1 << 16;
+  // Set on the type byte of a record whose fields are each written as an int length and UTF-8 bytes, which
+  // every record is now. Journals written before have no flag and DataOutputStream.writeUTF fields, which
+  // can't be longer than 65,535 bytes (e.g. a very long member name), so they are still read that way.
+  private static final int LONG_FIELDS = 0x80;
+
+  /*
+  Receives each record read from the journal by replay().
+  */
+  public interface Replay {
+    void apply(byte type, String[] fields);
+  }
+
+  /*
+  Writes the records of a compacted journal (see compact()).
+  */
+  public interface Writer {
+    void write(byte type, String... fields) throws IOException;
+  }
+
+  /*
+  Writes the whole current state through a Writer, for compact().
+  */
+  public interface Snapshot {
+    void write(Writer writer) throws IOException;
+  }
+
+  private Path path;
+  private FileChannel channel;
+
+  // Guards everything below. A lock rather than this object's monitor, as threads wait on it while the disk is 
+  // written, which would pin a virtual thread (e.g. a LibraryServer session) to its carrier thread.
+  private ReentrantLock lock;
+  // Signalled whenever records are appended, written or fail, or the journal is compacted
+  private Condition changed;
+  // Records appended but not yet written, and the sequence numbers of the last record appended and made durable.
+  private ByteArrayOutputStream pending;
+  private long appended;
+  private long durable;
+  private boolean writing;
+  private long records;
+  private long compactedRecords;
+  // The first write that failed. Once set, nothing more is written and every append and wait fails with it,
+  // so no change is ever reported as saved when it is not.
+  private IOException failure;
+
+  /*
+  Constructor
+  */
+  private Journal(Path path, FileChannel channel) {
+    this.path = path;
+    this.channel = channel;
+    this.lock = new ReentrantLock();
+    this.changed = this.lock.newCondition();
+    this.pending = new ByteArrayOutputStream(BUFFER_SIZE);
+    this.appended = 0;
+    this.durable = 0;
+    this.writing = false;
+    this.records = 0;
+    this.compactedRecords = 0;
+    this.failure = null;
+  }
+
+  /*
+  Purpose: Opens the journal in the given file, creating it if it does not exist, and starts the thread
+           that writes appended records to it. Call replay() before appending anything.
+  Arguments: filename - The journal file (String).
+  Returns: The journal (Journal).
+  */
+  public static Journal open(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    Journal journal = new Journal(path, channel);
+
+    Thread flusher = new Thread(journal::flushLoop, "journal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+    return journal;
+  }
+
+  /*
+  Purpose: Reads every record in the journal, in the order they were appended, and passes each one to replay.
+           A record that was only partly written (because the process stopped while writing it) ends the
+           journal: it is reported on standard error and cut off, so new records follow the last whole one.
+  Arguments: replay - What to do with each record (Replay).
+  Returns: The number of records read (long).
+  */
+  public long replay(Replay replay) throws IOException {
+    long good = 0;
+    long count = 0;
+    CRC32 crc = new CRC32();
+
+    this.channel.position(0);
+    InputStream stream = new BufferedInputStream(Channels.newInputStream(this.channel), BUFFER_SIZE);
+    DataInputStream in = new DataInputStream(stream);
+    try {
+      while (true) {
+        int length = in.readInt();
+        // A length longer than the rest of the file is a torn or damaged record, not something to allocate
+        if (length < 1 || length > this.channel.size() - good - 8) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        int checksum = in.readInt();
+
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = record.readByte();
+        int fieldCount = record.readInt();
+        if (fieldCount < 0 || fieldCount > length) {
+          break;
+        }
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fields.length; i++) {
+          fields[i] = (type & LONG_FIELDS) != 0 ? readField(record, length) : record.readUTF();
+        }
+        replay.apply((byte) (type & ~LONG_FIELDS), fields);
+
+        good += 4 + length + 4;
+        count++;
+      }
+    } catch (EOFException | UTFDataFormatException e) {
+      // The end of the journal, or a record cut off part way through or damaged
+    }
+
+    if (good < this.channel.size()) {
+      System.err.printf("Journal: ignored %d bytes after the last whole record.%n", this.channel.size() - good);
+      this.channel.truncate(good);
+    }
+    this.channel.position(good);
+
+    this.lock.lock();
+    try {
+      this.records = count;
+      this.compactedRecords = count;
+    } finally {
+      this.lock.unlock();
+    }
+    return count;
+  }
+
+  /*
+  Purpose: Adds a record to the end of the journal. The record is written by a background thread,
+           together with any others appended at about the same time, so this does not wait for the disk.
+           Use awaitDurable() before telling anyone the change has been made.
+  Arguments: type - The record type (byte), fields - The record's strings (String...).
+  Returns: The record's sequence number, to pass to awaitDurable() (long).
+  Throws: IOException if an earlier write to the journal failed (see checkWritable()).
+  */
+  public long append(byte type, String... fields) throws IOException {
+    byte[] frame = frame(type, fields);
+    this.lock.lock();
+    try {
+      this.checkWritable();
+      this.pending.write(frame, 0, frame.length);
+      this.appended++;
+      this.records++;
+      this.changed.signalAll();
+      return this.appended;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Throws the failure of an earlier write to the journal, if there was one. After a failure the
+           journal accepts no more records, so callers should check this before making a change.
+  */
+  public void checkWritable() throws IOException {
+    this.lock.lock();
+    try {
+      if (this.failure != null) {
+        throw new IOException("Journal is not writable: " + this.failure.getMessage(), this.failure);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Marks the journal as failed, as if a write had failed, for when it no longer describes the
+           current state (e.g. it could not be rewritten after the state was replaced). Nothing more is
+           appended to it, so the next start restores the state it does describe.
+  Arguments: cause - Why the journal can't be used (IOException).
+  */
+  public void fail(IOException cause) {
+    this.lock.lock();
+    try {
+      if (this.failure == null) {
+        this.failure = cause;
+      }
+      this.changed.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Waits until every record up to the given sequence number has been written and forced to disk.
+  Arguments: target - The sequence number returned by append() for the last record to wait for (long).
+  Throws: IOException if writing any of them failed, in which case they are not in the journal.
+  */
+  public void awaitDurable(long target) throws IOException {
+    this.lock.lock();
+    try {
+      while (this.durable < target) {
+        this.checkWritable();
+        // Keeps the thread's interrupt status, as the record is being written either way
+        this.changed.awaitUninterruptibly();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Returns whether the journal has grown enough that it should be compacted.
+  */
+  public boolean needsCompaction() {
+    this.lock.lock();
+    try {
+      return this.failure == null && this.records >= COMPACT_MIN_RECORDS && this.records >= 2 * this.compactedRecords;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Replaces the journal with the records written by snapshot, which should describe the whole
+           current state. The caller must stop anything from being appended until this returns.
+           The new journal is written to a temporary file and forced to disk before it replaces the old one,
+           so a crash at any point leaves one whole journal.
+  Arguments: snapshot - Writes the records of the current state (Snapshot).
+  */
+  public void compact(Snapshot snapshot) throws IOException {
+    this.lock.lock();
+    try {
+      this.compactLocked(snapshot);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /*
+  Purpose: Helper method for compact() that does the work once the lock is held.
+  */
+  private void compactLocked(Snapshot snapshot) throws IOException {
+    // Waits for the background thread to finish any write to the old file
+    while (this.writing) {
+      this.changed.awaitUninterruptibly();
+    }
+    this.checkWritable();
+
+    Path temp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+    long[] count = {0};
+    try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+      snapshot.write((type, fields) -> {
+        out.write(frame(type, fields));
+        count[0]++;
+      });
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    this.channel.close();
+    this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.channel.position(this.channel.size());
+
+    // Everything still pending is already part of the snapshot
+    this.pending.reset();
+    this.durable = this.appended;
+    this.records = count[0];
+    this.compactedRecords = count[0];
+    this.changed.signalAll();
+  }
+
+  /*
+  Purpose: Helper method run by the background thread. Takes everything appended since the last write,
+           writes it to the file in one go and forces it to disk, then wakes anyone waiting for it.
+           If the write fails, the failure is recorded and the thread stops, so the batch is never
+           reported as durable. Anything written of the batch is cut off again if possible, and
+           otherwise left for replay() to cut off as a torn record.
+  */
+  private void flushLoop() {
+    while (true) {
+      byte[] batch;
+      long batchEnd;
+      FileChannel target;
+      this.lock.lock();
+      try {
+        while (this.pending.size() == 0) {
+          try {
+            this.changed.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        batch = this.pending.toByteArray();
+        batchEnd = this.appended;
+        this.pending.reset();
+        this.writing = true;
+        target = this.channel;
+      } finally {
+        this.lock.unlock();
+      }
+
+      long batchStart = -1;
+      try {
+        batchStart = target.position();
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+          target.write(buffer);
+        }
+        target.force(false);
+      } catch (IOException e) {
+        System.err.println("Unable to write journal: " + e.getMessage());
+        if (batchStart >= 0) {
+          try {
+            target.truncate(batchStart);
+          } catch (IOException ignored) {
+            // replay() cuts off the partly written record instead
+          }
+        }
+        this.lock.lock();
+        try {
+          this.writing = false;
+          this.failure = e;
+          this.changed.signalAll();
+        } finally {
+          this.lock.unlock();
+        }
+        return;
+      }
+
+      this.lock.lock();
+      try {
+        this.writing = false;
+        this.durable = Math.max(this.durable, batchEnd);
+        this.changed.signalAll();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+
+  /*
+  Purpose: Helper method for replay() that reads a field written by frame().
+  Arguments: record - The record's payload (DataInputStream), length - The length of the payload (int).
+  Throws: EOFException if the field's length is more than the payload holds, which ends the journal.
+  */
+  private static String readField(DataInputStream record, int length) throws IOException {
+    int size = record.readInt();
+    if (size < 0 || size > length) {
+      throw new EOFException("Field longer than its record");
+    }
+    byte[] bytes = new byte[size];
+    record.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /*
+  Purpose: Helper method that encodes a record with its length and a checksum, so that replay() can tell
+           where a record ends and whether it was written completely.
+           Fields are written as an int length and UTF-8 bytes (see LONG_FIELDS), so any field can be recorded.
+  */
+  private static byte[] frame(byte type, String[] fields) {
+    try {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+      DataOutputStream record = new DataOutputStream(payload);
+      record.writeByte(type | LONG_FIELDS);
+      record.writeInt(fields.length);
+      for (String f: fields) {
+        byte[] bytes = f.getBytes(StandardCharsets.UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(payload.toByteArray());
+
+      ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.size() + 8);
+      DataOutputStream out = new DataOutputStream(frame);
+      out.writeInt(payload.size());
+      payload.writeTo(out);
+      out.writeInt((int) crc.getValue());
+      return frame.toByteArray();
+
+    } catch (IOException e) {
+      // Writing to a byte array can't fail
+      throw new IllegalStateException(e);
+    }
+  }
+}
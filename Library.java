@@ -2,13 +2,27 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Set;
+import java.util.HashSet;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import java.io.FileNotFoundException;
 import java.io.File;
+import java.io.PrintStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 
 
 
@@ -27,22 +41,132 @@ public class Library {
     "\n\nRENT <memberNumber> <serialNumber> loans out the specified book to the given member\nRELINQUISH " + 
     "<memberNumber> <serialNumber> returns the specified book from the member\nRELINQUISH ALL " + 
     "<memberNumber> returns all books rented by the specified member\n\nADD MEMBER <name> adds a member " + 
-    "to the system\nADD BOOK <filename> <serialNumber> adds a book to the system\n\nADD COLLECTION " + 
-    "<filename> adds a collection of books to the system\nSAVE COLLECTION <filename> saves the " + 
-    "system to a csv file\n\nCOMMON <memberNumber1> <memberNumber2> ... outputs the common books " +
+    "to the system\nADD BOOK <filename> <serialNumber> adds a book to the system\nADD BOOKS <filename> " + 
+    "<serialNumber1> <serialNumber2> ... adds many books to the system, reading the file once\nADD BOOKS " + 
+    "<filename> FROM <serialFile> adds the books whose serial numbers are listed in serialFile\n\nADD " + 
+    "COLLECTION <filename> adds a collection of books to the system\nADD COLLECTION <filename> PARALLEL " + 
+    "adds a collection of books to the system, parsing the file in parallel\nSAVE COLLECTION <filename> " + 
+    "saves the system to a csv file\n\nSAVE SNAPSHOT <filename> saves the books, members, loans and rental " + 
+    "histories to a binary snapshot file\nLOAD SNAPSHOT <filename> replaces everything in the system with " + 
+    "the contents of a snapshot file\nSAVE CATALOG <filename> saves the books to a read-only catalog file " + 
+    "for --catalog\n\nCOMMON <memberNumber1> <memberNumber2> ... outputs the common books " +
     "in members\' history";
   
   private List<Book> books;
-  private List<Member> members;
-  private static Integer nextMemberNumber;
+  private Map<String,Integer> bookIndex;
+  // Positions in this.books of the books by each author and in each genre, sorted by serial number
+  private Map<String,IntList> booksByAuthor;
+  private Map<String,IntList> booksByGenre;
+  private TreeMap<String,Integer> authorCounts;
+  private TreeMap<String,Integer> genreCounts;
+  // The number of copies of each book by short string, and the NUMBER COPIES line for each, kept in the order 
+  //  they are printed in
+  private Map<String,Integer> copyCounts;
+  private TreeSet<String> copyLines;
+  private MemberDirectory members;
+  private AtomicInteger nextMemberNumber;
+
+  // Commands that add books or members take the write lock, and every other command takes the read lock, 
+  //  so commands that only read run at the same time. Renting and returning also lock the book and then 
+  //  the member involved (always in that order, so two commands can never wait on each other).
+  private ReentrantReadWriteLock catalogLock;
+  private LockStripes bookLocks;
+  private LockStripes memberLocks;
+
+  // When a journal is open (see openJournal), every change is recorded in it, so it can be restored on restart.
+  private Journal journal;
+  // The sequence number of the last record this session appended to the journal, and whether a change made by
+  // this session could not be recorded in it. Both are per session, so each session only waits for its own changes.
+  private long journalMark;
+  private boolean journalFailed;
+  // The files written by SAVE COLLECTION, by absolute path, so that later saves only need to add new books.
+  //  Sessions can save at the same time, so they are only used while holding savedCollectionsLock.
+  private Map<String,SavedCollection> savedCollections;
+  private ReentrantLock savedCollectionsLock;
+
+  // Set with -Dlibrary.stats=true to report load throughput on standard error.
+  private static final boolean STATS = Boolean.getBoolean("library.stats");
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+  private static final int BATCH_SIZE = 256;
+  private static final int BATCH_QUEUE_SIZE = 64;
+  private static final int LOCK_STRIPES = 64;
+
+  // All command output goes through this stream, which is flushed by run() after each command. Commands print 
+  //  while holding locks, so it should not block until flushed (see CommandOutput).
+  private PrintStream out;
   
   /*
   Constructor
   */
   public Library() {
-    this.books = new ArrayList<Book>();
-    this.members = new ArrayList<Member>();
-    nextMemberNumber = 100000;
+    this(new PrintStream(new CommandOutput(System.out), false));
+  }
+
+  /*
+  Constructor
+  Arguments: out (PrintStream) - The stream to write command output to. It is only flushed by run() and flush(),
+             after each command has released its locks, so writing to it should not block until then.
+  */
+  public Library(PrintStream out) {
+    this.out = out;
+    // With -Dlibrary.columnar=true, books are stored column by column rather than as one object each
+    if (ColumnarCatalog.ENABLED) {
+      this.books = new ColumnarCatalog();
+    } else {
+      this.books = new ArrayList<Book>();
+    }
+    this.bookIndex = new HashMap<String,Integer>();
+    this.booksByAuthor = new HashMap<String,IntList>();
+    this.booksByGenre = new HashMap<String,IntList>();
+    this.authorCounts = new TreeMap<String,Integer>();
+    this.genreCounts = new TreeMap<String,Integer>();
+    this.copyCounts = new HashMap<String,Integer>();
+    this.copyLines = new TreeSet<String>();
+    this.members = new MemberDirectory();
+    this.nextMemberNumber = new AtomicInteger(MemberDirectory.FIRST_MEMBER_NUMBER);
+
+    this.catalogLock = new ReentrantReadWriteLock();
+    this.bookLocks = new LockStripes(LOCK_STRIPES);
+    this.memberLocks = new LockStripes(LOCK_STRIPES);
+    this.savedCollections = new HashMap<String,SavedCollection>();
+    this.savedCollectionsLock = new ReentrantLock();
+  }
+
+  /*
+  Constructor
+  Arguments: shared (Library) - The library whose books, members and locks are shared, 
+             out (PrintStream) - The stream to write this library's command output to.
+  */
+  private Library(Library shared, PrintStream out) {
+    this.out = out;
+    this.books = shared.books;
+    this.bookIndex = shared.bookIndex;
+    this.booksByAuthor = shared.booksByAuthor;
+    this.booksByGenre = shared.booksByGenre;
+    this.authorCounts = shared.authorCounts;
+    this.genreCounts = shared.genreCounts;
+    this.copyCounts = shared.copyCounts;
+    this.copyLines = shared.copyLines;
+    this.members = shared.members;
+    this.nextMemberNumber = shared.nextMemberNumber;
+
+    this.catalogLock = shared.catalogLock;
+    this.bookLocks = shared.bookLocks;
+    this.memberLocks = shared.memberLocks;
+    this.journal = shared.journal;
+    this.savedCollections = shared.savedCollections;
+    this.savedCollectionsLock = shared.savedCollectionsLock;
+  }
+
+  /*
+  Purpose: Returns a session on this library for another user, e.g. a connection to LibraryServer. 
+           The session works on the same books and members, and can run commands at the same time as 
+           this library, but prints its output to its own stream.
+  Arguments: out (PrintStream) - The stream to write the session's command output to
+  Returns: The session (Library)
+  */
+  public Library session(PrintStream out) {
+    return new Library(this, out);
   }
   
   // ----------------------------------------------------------------------------------------------
@@ -56,33 +180,50 @@ public class Library {
   Arguments: fullString (boolean) - Whether to print short or long strings
   */
   public void getAllBooks​(boolean fullString) {
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    List<String> BookStrings = new ArrayList<String>();
+      int count = 0;
 
-    for (Book b: this.books) {
+      for (Book b: this.books) {
 
-      if (b == null) {
-        continue;
+        if (b == null) {
+          continue;
+        }
+        this.printListEntry(b, fullString, count);
+        count++;
       }
+      this.out.println();
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
+  }
 
-      // Adds the short or long string based on the flag fullString
-      if (fullString) {
-        BookStrings.add(b.longString());
+  /*
+  Purpose: A helper method for the listing commands that prints either the short or long string of a book, 
+           preceded by the separator needed if it is not the first book in the list. 
+           Long strings are separated by a blank line, short strings by a new line.
+           The list is ended by a call to this.out.println().
 
-      } else {
-        BookStrings.add(b.shortString());
+  Arguments: b (Book) - The book to print, fullString (boolean) - Whether to print the short or long string,
+             position (int) - The number of books already printed in the list
+  */
+  private void printListEntry(Book b, boolean fullString, int position) {
+    if (position > 0) {
+      this.out.println();
+      if (fullString) {
+        this.out.println();
       }
     }
 
-    // Ensures correct whitespace for the printing
     if (fullString) {
-      System.out.println(String.join("\n\n", BookStrings));
+      this.out.print(b.longString());
     } else {
-      System.out.println(String.join("\n", BookStrings));
+      this.out.print(b.shortString());
     }
   }
 
@@ -98,47 +239,38 @@ public class Library {
   Arguments: fullString (boolean) - Whether to print short or long strings
   */
   public void getAvailableBooks​(boolean fullString) {
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    List<String> availableBookStrings = new ArrayList<String>();
+      int count = 0;
 
-    int count = 0;
+      for (Book b: this.books) {
 
-    for (Book b: this.books) {
+        if (b == null) {
+          continue;
+        }
 
-      if (b == null) {
-        continue;
-      }
+        // Skips if the book is unavailable
+        if (b.isRented()) {
+          continue;
+        }
 
-      // Skips if the book is unavailable
-      if (b.isRented()) {
-        continue;
+        this.printListEntry(b, fullString, count);
+        count++;
       }
 
-      // Adds the short or long string based on the flag fullString
-      if (fullString) {
-        availableBookStrings.add(b.longString());
-
-      } else {
-        availableBookStrings.add(b.shortString());
+      if (count < 1) {
+        this.out.println("No books available.");
+        return;
       }
-      count++;
-    }
-    
-    if (count < 1) {
-      System.out.println("No books available.");
-      return;
-    }
-
-    if (fullString) {
-      System.out.println(String.join("\n\n", availableBookStrings));
-    } else {
-      System.out.println(String.join("\n", availableBookStrings));
+      this.out.println();
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
-
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -154,41 +286,22 @@ public class Library {
   Format: "[short string]: [number]"
   */
   public void getCopies() {
-
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
-
-    Map<String,Integer> copies = new HashMap<String,Integer>();
-
-    // Loops through this.books and counts the copies for each book in a hashmap
-    // This is based on matching short strings
-    for (Book b: this.books) {
-      if (copies.containsKey(b.shortString())) {
-        copies.put(b.shortString(), copies.get(b.shortString())+1);
-      } else {
-        copies.put(b.shortString(), 1);
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
       }
-    }
-
-    // Iterates through the hashmap and adds each book and its amount of copies as a string to an array.
-    ArrayList<String> outputLines = new ArrayList<String>();
-
-    Iterator it = copies.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry pair = (Map.Entry)it.next();
-      outputLines.add(pair.getKey() + ": " + pair.getValue());
-    }
-
-    // Sorts the array of strings lexicographically
-    Collections.sort(outputLines);
 
-    // Prints out the sorted strings
-    for (String line: outputLines) {
-      System.out.println(line);
+      // this.copyLines holds the line for each book, updated as books are added and sorted as whole lines,
+      //  as lines sort differently from their short strings when one starts with another 
+      //  (e.g. "Dune (Frank): 2" comes after "Dune (Frank) 2 (X): 1" as ':' comes after ' ').
+      for (String line: this.copyLines) {
+        this.out.println(line);
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
-
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -202,28 +315,19 @@ public class Library {
 
   */
   public void getGenres() {
-
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
-
-    // Loops through this.books, and whenever a genre not already on the 
-    // genres list is found, it is added to the genres list.
-    List<String> genres = new ArrayList<String>();
-    for (Book b: this.books) {
-      // Checks the genre is not already on the list
-      if (!genres.contains(b.getGenre())) {
-        genres.add(b.getGenre());
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
       }
-    }
-
-    // Sorts the genres lexicographically.
-    Collections.sort(genres);
 
-    // Prints the genres.
-    for (String g: genres) {
-      System.out.println(g);
+      // this.genreCounts holds each genre once, already sorted lexicographically.
+      for (String g: this.genreCounts.keySet()) {
+        this.out.println(g);
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
@@ -238,34 +342,26 @@ public class Library {
            If there are no books, output "No books in system."
   */
   public void getAuthors() {
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
-
-    List<String> authors = new ArrayList<String>();
-
-    // Loops through this.books, and whenever an author not already on the 
-    // authors list is found, it is added to the authors list.
-    for (Book b: this.books) {
-      if (!authors.contains(b.getAuthor())) {
-        authors.add(b.getAuthor());
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
       }
-    }
 
-    // Sorts the authors lexicographically.
-    Collections.sort(authors);
-
-    // Prints the authors.
-    for (String a: authors) {
-      System.out.println(a);
+      // this.authorCounts holds each author once, already sorted lexicographically.
+      for (String a: this.authorCounts.keySet()) {
+        this.out.println(a);
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
   // ----------------------------------------------------------------------------------------------
 
   /*
-  Purpose: Prints all books in the system with the specified genre using the book filterAuthor method
+  Purpose: Prints all books in the system with the specified genre using the genre index
 
            Invoked by "GENRE [genre]", this method outputs all the books in the system with the specified genre. 
            Each book has its short string printed on a new line, and books ordered by serial number.
@@ -276,20 +372,26 @@ public class Library {
   Arguments: genre (String)- The genre to filter by
   */
   public void getBooksByGenre​(String genre) {
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    List<Book> filteredBooks = Book.filterGenre​(this.books, genre);
+      // this.booksByGenre is kept sorted by serial number as books are added
+      IntList filteredBooks = this.booksByGenre.get(genre);
 
-    if (filteredBooks.size()<1) {
-      System.out.printf("No books with genre %s.%n", genre);
-      return;
-    }
+      if (filteredBooks == null || filteredBooks.size()<1) {
+        this.out.printf("No books with genre %s.%n", genre);
+        return;
+      }
 
-    for (Book b: filteredBooks) {
-      System.out.println(b.shortString());
+      for (int i = 0; i < filteredBooks.size(); i++) {
+        this.out.println(this.books.get(filteredBooks.get(i)).shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
@@ -307,20 +409,26 @@ public class Library {
   Arguments: author (String) - The author to filter by
   */
   public void getBooksByAuthor​(String author) {
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    List<Book> filteredBooks = Book.filterAuthor​(this.books, author);
+      // this.booksByAuthor is kept sorted by serial number as books are added
+      IntList filteredBooks = this.booksByAuthor.get(author);
 
-    if (filteredBooks.size()<1) {
-      System.out.printf("No books by %s.%n", author);
-      return;
-    }
+      if (filteredBooks == null || filteredBooks.size()<1) {
+        this.out.printf("No books by %s.%n", author);
+        return;
+      }
 
-    for (Book b: filteredBooks) {
-      System.out.println(b.shortString());
+      for (int i = 0; i < filteredBooks.size(); i++) {
+        this.out.println(this.books.get(filteredBooks.get(i)).shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
@@ -339,27 +447,29 @@ public class Library {
   Arguments: serialNumber (String) - The serial number of the book, fullString - Whether to print short or long string
   */
   public void getBook​(String serialNumber, boolean fullString) {
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
-
-    // Loops through this.books until it finds a matching serial number, then prints the long/short string and returns
-    for (Book b: this.books) {
+      int bookIndex = this.getBookIndex(serialNumber);
 
-      if (b.getSerialNumber().equals(serialNumber)) {
-        if (fullString) {
-          System.out.println(b.longString());
-        } else {
-          System.out.println(b.shortString());
-        }
+      if (bookIndex == -1) {
+        this.out.println("No such book in system.");
         return;
       }
-    }
 
-    // If no book matched, the return in the if statement was not triggered and instead prints here.
-    System.out.println("No such book in system.");
+      Book b = this.books.get(bookIndex);
+      if (fullString) {
+        this.out.println(b.longString());
+      } else {
+        this.out.println(b.shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -376,40 +486,39 @@ public class Library {
   Arguments: serialNumber (String) - The serial number of the book
   */
   public void bookHistory​(String serialNumber) {
-    if (serialNumber == null) {
-      System.out.println("No such book in system.");
-      return;
-    }
-
-    boolean found = false;
-
-    // Loops until it finds a matchin serial number
-    for (Book b: this.books) {
-      
-      if (b.getSerialNumber().equals(serialNumber)) {
-        found = true;
+    this.catalogLock.readLock().lock();
+    try {
+      if (serialNumber == null) {
+        this.out.println("No such book in system.");
+        return;
+      }
 
-        if (b.renterHistory().size() < 1) {
-          System.out.println("No rental history.");
-          return;
-        }
+      int bookIndex = this.getBookIndex(serialNumber);
 
-        for (Member m: b.renterHistory()) {
-          System.out.println(m.getMemberNumber());
-        }
+      if (bookIndex == -1) {
+        this.out.println("No such book in system.");
+        return;
+      }
 
-        break;
+      // Copies the history under the book's lock, so that it can be printed while the book is rented and returned
+      List<Member> history;
+      int[] stripes = this.bookLocks.lock(this.getBookKey(bookIndex));
+      try {
+        history = new ArrayList<Member>(this.books.get(bookIndex).renterHistory());
+      } finally {
+        this.bookLocks.unlock(stripes);
       }
-    }
 
-    if (!found) {
-      System.out.println("No such book in system.");
-      return;
-    }
+      if (history.size() < 1) {
+        this.out.println("No rental history.");
+        return;
+      }
 
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
+      for (Member m: history) {
+        this.out.println(m.getMemberNumber());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
@@ -428,41 +537,125 @@ public class Library {
   Arguments: bookFile (String) - The csv file to read, serialNumber (String) - The serial number of the book
   */
   public void addBook(String bookFile, String serialNumber){
-    if (serialNumber == null) {
-      System.out.println("No such book in file.");
-      return;
-    }
-    if (bookFile == null){
-      System.out.println("No such file.");
-      return;
-    }
-    //Checking if the book is already in the system
-    for (Book book: this.books) {
-      if (book.getSerialNumber().equals(serialNumber)) {
-        System.out.println("Book already exists in system.");
+    this.catalogLock.writeLock().lock();
+    try {
+      if (serialNumber == null) {
+        this.out.println("No such book in file.");
+        return;
+      }
+      if (bookFile == null){
+        this.out.println("No such file.");
+        return;
+      }
+      //Checking if the book is already in the system
+      if (this.bookIndex.containsKey(serialNumber)) {
+        this.out.println("Book already exists in system.");
         return;
       }
+
+      // Checks the file exists first, so a null return from readBook means the book was not found.
+      File myFile = new File(bookFile);
+      if (!myFile.isFile() || !myFile.canRead()) {
+        this.out.println("No such file.");
+        return;
+      }
+
+      Book b = Book.readBook(bookFile, serialNumber);
+
+      if (b == null) {
+        this.out.println("No such book in file.");
+        return;
+      }
+
+      this.catalogBook(b);
+
+      this.out.println("Successfully added: "+ b.shortString()+".");
+    } finally {
+      this.catalogLock.writeLock().unlock();
     }
+  }
 
-    Book b = Book.readBook(bookFile, serialNumber);
+  // ----------------------------------------------------------------------------------------------
 
-    if (b == null) {
-      // Checks if the null return was due to the file or book not being found.
-      try {
-        File myFile = new File(bookFile);
-        Scanner scan = new Scanner(myFile); 
-      } catch (FileNotFoundException e) {
-        System.out.println("No such file.");
+  /*
+  Purpose: Adds many books to the system from one csv file, reading the file only once using the 
+           Book readBooks() method.
+           Invoked by the command "ADD BOOKS [file] [serialNumber] [serialNumber] ...", or 
+           "ADD BOOKS [file] FROM [serialFile]" to read the serial numbers (separated by whitespace) 
+           from a file.
+
+           If either file does not exist, output "No such file."
+           Otherwise, output one line for each serial number, in the order given, with the same 
+           message ADD BOOK would print for it:
+           "Book already exists in system.", "No such book in file." or "Successfully added: [shortstring]."
+
+  Arguments: bookFile (String) - The csv file to read, serialNumbers (List<String>) - The serial numbers of the books
+  */
+  public void addBooks(String bookFile, List<String> serialNumbers) {
+    this.catalogLock.writeLock().lock();
+    try {
+      if (bookFile == null || serialNumbers == null) {
+        this.out.println("No such file.");
         return;
-      } 
-      System.out.println("No such book in file.");
-      return;
+      }
+
+      // Only serial numbers not already in the system need to be looked for in the file
+      Set<String> wanted = new HashSet<String>();
+      for (String serialNumber: serialNumbers) {
+        if (!this.bookIndex.containsKey(serialNumber)) {
+          wanted.add(serialNumber);
+        }
+      }
+
+      Map<String,Book> found = Book.readBooks(bookFile, wanted);
+      if (found == null) {
+        this.out.println("No such file.");
+        return;
+      }
+
+      for (String serialNumber: serialNumbers) {
+        // Also catches serial numbers given more than once
+        if (this.bookIndex.containsKey(serialNumber)) {
+          this.out.println("Book already exists in system.");
+          continue;
+        }
+
+        Book b = found.get(serialNumber);
+        if (b == null) {
+          this.out.println("No such book in file.");
+          continue;
+        }
 
+        this.catalogBook(b);
+        this.out.println("Successfully added: "+ b.shortString()+".");
+      }
+    } finally {
+      this.catalogLock.writeLock().unlock();
     }
-    
-    this.books.add(b);
+  }
+
+  /*
+  Purpose: A helper method that reads a list of serial numbers separated by whitespace from a file, 
+           for "ADD BOOKS [file] FROM [serialFile]".
 
-    System.out.println("Successfully added: "+ b.shortString()+".");
+  Arguments: filename (String) - The file of serial numbers
+  Returns: The list of serial numbers (List<String>), or null if the file can't be read
+  */
+  private static List<String> readSerialNumbers(String filename) {
+    List<String> serialNumbers = new ArrayList<String>();
+
+    try {
+      for (String line: Files.readAllLines(Paths.get(filename))) {
+        for (String serialNumber: line.trim().split("\\s+")) {
+          if (!serialNumber.isEmpty()) {
+            serialNumbers.add(serialNumber);
+          }
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return serialNumbers;
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -481,13 +674,8 @@ public class Library {
       return -1;
     }
 
-    // Loops through this.books unitl the member Number is found, then returns it's index.
-    for (int i = 0; i < this.members.size(); i ++) {
-      if (this.members.get(i).getMemberNumber().equals(memberNumber)) {
-        return i;
-      }
-    }
-    return -1;
+    // Member numbers are sequential, so the directory computes the index directly from the number.
+    return this.members.indexOf(memberNumber);
   }
 
   /*
@@ -504,125 +692,293 @@ public class Library {
       return -1;
     }
 
-    int bookIndex = -1;
-    
-    for (int i = 0; i < this.books.size(); i ++) {
-      if (this.books.get(i).getSerialNumber().equals(serialNumber)) {
-        bookIndex = i;
-        break;
-      }
-    }
+    // this.bookIndex maps every serial number in the system to its position in this.books
+    Integer bookIndex = this.bookIndex.get(serialNumber);
 
+    if (bookIndex == null) {
+      return -1;
+    }
     return bookIndex;
   }
 
-  // ----------------------------------------------------------------------------------------------
-
   /*
-  Purpose: Loans out a book to a member within the system.
-
-           Invoked by the command "RENT [memberNumber] [serialNumber]", this method loans out the specified book to the given member.
-           
-           If there are no members in the system, output "No members in system."
-           If there are no books in the system, output "No books in system."
-           If the member does not exist, output "No such member in system."
-           If the book does not exist, output "No such book in system."
-           If the book is already being loaned out, output "Book is currently unavailable."
-           If the book is successfully loaned out, output "Success."
+  Purpose: A helper method that adds a book to the end of this.books and records it 
+           in this.bookIndex, the author and genre indexes, the author and genre counts and 
+           the copy counts, so they always stay in sync.
+           Every book entering the system must go through this method, which also makes the book share 
+           the author and genre Strings of the books already in the system, whichever way it was added.
 
-  Arguments: memberNumber (String) - The members' member number, serialNumber (String) - The book's serial number
+  Arguments: book (Book) - the book to add
   */
-  public void rentBook(String memberNumber, String serialNumber) {
+  private void catalogBook(Book book) {
+    book.shareValues(sharedKey(this.authorCounts, book.getAuthor()), sharedKey(this.genreCounts, book.getGenre()));
 
-    // Checks (see method purpose for explanation)
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+    int slot = this.books.size();
+    this.bookIndex.put(book.getSerialNumber(), slot);
+    this.books.add(book);
 
-    // Getting the indexed in this.books and this.members for the given member and serial number.
-    int memberIndex = this.getMemberIndex(memberNumber);
-    int bookIndex = this.getBookIndex(serialNumber);
+    this.addToIndex(this.booksByAuthor, book.getAuthor(), slot, book.getSerialKey());
+    this.addToIndex(this.booksByGenre, book.getGenre(), slot, book.getSerialKey());
 
-    if (bookIndex == -1) {
-      System.out.println("No such book in system.");
-      return;
-    }
-
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
+    // Counts how many books reference each author and genre
+    this.authorCounts.merge(book.getAuthor(), 1, Integer::sum);
+    this.genreCounts.merge(book.getGenre(), 1, Integer::sum);
 
-    if (this.books.get(bookIndex).isRented()) {
-      System.out.println("Book is currently unavailable.");
-      return;
+    // Books are copies if they have the same short string. The book's line for NUMBER COPIES is replaced
+    //  with one for the new count.
+    String shortString = book.shortString();
+    int copies = this.copyCounts.merge(shortString, 1, Integer::sum);
+    if (copies > 1) {
+      this.copyLines.remove(copyLine(shortString, copies - 1));
     }
+    this.copyLines.add(copyLine(shortString, copies));
 
-    // Renting out the book
-    this.members.get(memberIndex).rent(this.books.get(bookIndex));
-
-    System.out.println("Success.");
+    this.record(Journal.BOOK, book.getSerialNumber(), book.getTitle(), book.getAuthor(), book.getGenre());
   }
 
-  // ----------------------------------------------------------------------------------------------
+  /*
+  Purpose: A helper method that returns the line printed by NUMBER COPIES for a book.
+  Arguments: shortString (String) - the book's short string, copies (int) - the number of copies of it
+  */
+  private static String copyLine(String shortString, int copies) {
+    return shortString + ": " + copies;
+  }
 
   /*
-  Purpose: Returns a book to the system.
+  Purpose: A helper method that returns the instance of a value that is already a key of the given counts.
+  Arguments: counts (TreeMap<String,Integer>) - the author or genre counts, value (String) - the author or genre
+  Returns: The instance held by the counts (String), or value itself if no book in the system has it yet.
+  */
+  private static String sharedKey(TreeMap<String,Integer> counts, String value) {
+    String held = counts.ceilingKey(value);
+    return value.equals(held) ? held : value;
+  }
 
-           Invoked by the command "RELINQUISH [memberNumber] [serialNumber]", this method gets 
-           the specified member to return the given book back to the system.
-           
-           If there are no members in the system, output "No members in system."
-           If there are no books in the system, output "No books in system."
-           If the member does not exist, output "No such member in system."
-           If the book does not exist, output "No such book in system."
-           If the book is not being loaned out by the member, output "Unable to return book."
-           If the book is successfully return, output "Success."
+  /*
+  Purpose: A helper method that adds a book's position to the list stored under the given key, 
+           keeping the list sorted by serial number. 
+           Books with the same serial number keep the order they were added in.
 
-  Arguments: memberNumber (String) - The members' member number, serialNumber (String) - The book's serial number
+  Arguments: index (Map<String,IntList>) - the author or genre index, 
+             key (String) - the author or genre of the book, slot (int) - the book's position in this.books,
+             serialKey (long) - the book's numeric serial number
   */
-  public void relinquishBook(String memberNumber, String serialNumber) {
-
-    // Checks (see method purpose for description)
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
+  private void addToIndex(Map<String,IntList> index, String key, int slot, long serialKey) {
+    IntList postings = index.get(key);
+    if (postings == null) {
+      postings = new IntList();
+      index.put(key, postings);
+    }
+
+    // Binary searches for the first book with a bigger serial number
+    int low = 0;
+    int high = postings.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (serialKey < this.getSerialKey(postings.get(mid))) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
     }
+    postings.add(low, slot);
+  }
 
-    // Getting the indexed in this.books and this.members for the given member and serial number.
-    int memberIndex = this.getMemberIndex(memberNumber);
-    int bookIndex = this.getBookIndex(serialNumber);
+  /*
+  Purpose: A helper method that returns the numeric serial number of the book at the given position 
+           in this.books, reading it straight from the column if the books are stored in a ColumnarCatalog.
 
-    if (bookIndex == -1) {
-      System.out.println("No such book in system.");
-      return;
+  Arguments: slot (int) - the book's position in this.books
+  Returns: the book's numeric serial number (long)
+  */
+  private long getSerialKey(int slot) {
+    if (this.books instanceof ColumnarCatalog) {
+      return ((ColumnarCatalog) this.books).serialKey(slot);
     }
+    return this.books.get(slot).getSerialKey();
+  }
 
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
-    Book b = this.books.get(bookIndex);
-    Member m = this.members.get(memberIndex);
+  /*
+  Purpose: A helper method that returns the key the book at the given position in this.books is locked by.
+           Books are locked by their serial number, so that a book can be locked without knowing its position.
 
-    if (!b.isRented() || b.getRenter() != m) {
-      System.out.println("Unable to return book.");
-      return;
-    }
+  Arguments: slot (int) - the book's position in this.books
+  Returns: the book's lock key (int)
+  */
+  private int getBookKey(int slot) {
+    return Long.hashCode(this.getSerialKey(slot));
+  }
 
-    // Relinquishing the book
-    m.relinquish(b);
+  /*
+  Purpose: A helper method that returns the key the given book is locked by (see getBookKey(int)).
+
+  Arguments: book (Book) - the book
+  Returns: the book's lock key (int)
+  */
+  private static int getBookKey(Book book) {
+    return Long.hashCode(book.getSerialKey());
+  }
 
-    System.out.println("Success.");
+  /*
+  Purpose: A helper method that returns the book at the given position in this.books, for changing it 
+           (renting it or restoring its history). A ColumnarCatalog has to keep the Book object from then on, 
+           as it holds the renter and history.
+
+  Arguments: slot (int) - the book's position in this.books
+  Returns: the book (Book)
+  */
+  private Book pinBook(int slot) {
+    if (this.books instanceof ColumnarCatalog) {
+      return ((ColumnarCatalog) this.books).pin(slot);
+    }
+    return this.books.get(slot);
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  Purpose: Loans out a book to a member within the system.
+
+           Invoked by the command "RENT [memberNumber] [serialNumber]", this method loans out the specified book to the given member.
+           
+           If there are no members in the system, output "No members in system."
+           If there are no books in the system, output "No books in system."
+           If the member does not exist, output "No such member in system."
+           If the book does not exist, output "No such book in system."
+           If the book is already being loaned out, output "Book is currently unavailable."
+           If the book is successfully loaned out, output "Success."
+
+  Arguments: memberNumber (String) - The members' member number, serialNumber (String) - The book's serial number
+  */
+  public void rentBook(String memberNumber, String serialNumber) {
+    this.catalogLock.readLock().lock();
+    try {
+      // Checks (see method purpose for explanation)
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
+
+      // Getting the indexed in this.books and this.members for the given member and serial number.
+      int memberIndex = this.getMemberIndex(memberNumber);
+      int bookIndex = this.getBookIndex(serialNumber);
+
+      if (bookIndex == -1) {
+        this.out.println("No such book in system.");
+        return;
+      }
+
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
+
+      // The book's lock is taken before the member's (as everywhere), so that checking the book is available 
+      //  and updating both the book and the member happen as one step
+      boolean rented = false;
+      int[] bookStripes = this.bookLocks.lock(this.getBookKey(bookIndex));
+      int[] memberStripes = this.memberLocks.lock(memberIndex);
+      try {
+        if (!this.books.get(bookIndex).isRented()) {
+          // Renting out the book
+          Member m = this.members.get(memberIndex);
+          Book b = this.pinBook(bookIndex);
+          rented = m.rent(b);
+
+          if (rented) {
+            this.record(Journal.RENT, m.getMemberNumber(), b.getSerialNumber());
+          }
+        }
+      } finally {
+        this.memberLocks.unlock(memberStripes);
+        this.bookLocks.unlock(bookStripes);
+      }
+
+      if (!rented) {
+        this.out.println("Book is currently unavailable.");
+        return;
+      }
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  Purpose: Returns a book to the system.
+
+           Invoked by the command "RELINQUISH [memberNumber] [serialNumber]", this method gets 
+           the specified member to return the given book back to the system.
+           
+           If there are no members in the system, output "No members in system."
+           If there are no books in the system, output "No books in system."
+           If the member does not exist, output "No such member in system."
+           If the book does not exist, output "No such book in system."
+           If the book is not being loaned out by the member, output "Unable to return book."
+           If the book is successfully return, output "Success."
+
+  Arguments: memberNumber (String) - The members' member number, serialNumber (String) - The book's serial number
+  */
+  public void relinquishBook(String memberNumber, String serialNumber) {
+    this.catalogLock.readLock().lock();
+    try {
+      // Checks (see method purpose for description)
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
+
+      // Getting the indexed in this.books and this.members for the given member and serial number.
+      int memberIndex = this.getMemberIndex(memberNumber);
+      int bookIndex = this.getBookIndex(serialNumber);
+
+      if (bookIndex == -1) {
+        this.out.println("No such book in system.");
+        return;
+      }
+
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
+      boolean returned = false;
+      int[] bookStripes = this.bookLocks.lock(this.getBookKey(bookIndex));
+      int[] memberStripes = this.memberLocks.lock(memberIndex);
+      try {
+        Book b = this.books.get(bookIndex);
+        Member m = this.members.get(memberIndex);
+
+        if (b.isRented() && b.getRenter() == m) {
+          // Relinquishing the book
+          returned = m.relinquish(b);
+
+          if (returned) {
+            this.record(Journal.RELINQUISH, m.getMemberNumber(), b.getSerialNumber());
+          }
+        }
+      } finally {
+        this.memberLocks.unlock(memberStripes);
+        this.bookLocks.unlock(bookStripes);
+      }
+
+      if (!returned) {
+        this.out.println("Unable to return book.");
+        return;
+      }
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -640,23 +996,60 @@ public class Library {
   Arguments: memberNumber (String) - The member's member number
   */
   public void relinquishAll(String memberNumber) {
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
 
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
+      // Gets the index of the corresponding member in this.members
+      int memberIndex = this.getMemberIndex(memberNumber);
 
-    // Gets the index of the corresponding member in this.members
-    int memberIndex = this.getMemberIndex(memberNumber);
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
 
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
+      Member m = this.members.get(memberIndex);
+
+      // The books' locks have to be taken before the member's, but which books the member has is only known 
+      //  once the member is locked. So the list is read first, and the books are only returned if it is 
+      //  still the same once everything is locked (otherwise another command got in between, and it is read again).
+      while (true) {
+        List<Book> renting;
+        int[] memberStripes = this.memberLocks.lock(memberIndex);
+        try {
+          renting = m.renting();
+        } finally {
+          this.memberLocks.unlock(memberStripes);
+        }
 
-    // uses the member relinquish all method.
-    this.members.get(memberIndex).relinquishAll();
-    System.out.println("Success.");
+        int[] keys = new int[renting.size()];
+        for (int i = 0; i < keys.length; i++) {
+          keys[i] = getBookKey(renting.get(i));
+        }
+
+        int[] bookStripes = this.bookLocks.lock(keys);
+        memberStripes = this.memberLocks.lock(memberIndex);
+        try {
+          if (m.renting().equals(renting)) {
+            // uses the member relinquish all method.
+            m.relinquishAll();
+            if (!renting.isEmpty()) {
+              this.record(Journal.RELINQUISH_ALL, m.getMemberNumber());
+            }
+            break;
+          }
+        } finally {
+          this.memberLocks.unlock(memberStripes);
+          this.bookLocks.unlock(bookStripes);
+        }
+      }
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -674,28 +1067,31 @@ public class Library {
   Arguments: memberNumber (String) - The member's member number
   */
   public void getMember(String memberNumber) {
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
 
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
-
-    if (memberNumber == null) {
-      System.out.println("No such member in system.");
-      return;
-    }
-
-    int memberIndex = this.getMemberIndex(memberNumber);
+      if (memberNumber == null) {
+        this.out.println("No such member in system.");
+        return;
+      }
 
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
+      int memberIndex = this.getMemberIndex(memberNumber);
 
-    Member mem = this.members.get(memberIndex);
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
 
-    System.out.printf("%s: %s%n", mem.getMemberNumber(),mem.getName());
+      Member mem = this.members.get(memberIndex);
 
+      this.out.printf("%s: %s%n", mem.getMemberNumber(),mem.getName());
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -715,27 +1111,39 @@ public class Library {
   Arguments: memberNumber (String) - The member's member number
   */
   public void getMemberBooks(String memberNumber) {
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
 
-    int memberIndex = this.getMemberIndex(memberNumber);
+      int memberIndex = this.getMemberIndex(memberNumber);
 
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
 
-    if (this.members.get(memberIndex).renting().size() < 1) {
-      System.out.println("Member not currently renting.");
-      return;
-    }
+      List<Book> renting;
+      int[] stripes = this.memberLocks.lock(memberIndex);
+      try {
+        renting = this.members.get(memberIndex).renting();
+      } finally {
+        this.memberLocks.unlock(stripes);
+      }
 
-    for (Book b: this.members.get(memberIndex).renting()) {
-      System.out.println(b.shortString());
-    }
+      if (renting.size() < 1) {
+        this.out.println("Member not currently renting.");
+        return;
+      }
 
+      for (Book b: renting) {
+        this.out.println(b.shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -754,28 +1162,42 @@ public class Library {
   Arguments: memberNumber (String) - The member's member number
   */
   public void memberRentalHistory(String memberNumber) {
-    if (memberNumber == null) {
-      return;
-    }
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (memberNumber == null) {
+        return;
+      }
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
 
-    int memberIndex = this.getMemberIndex(memberNumber);
+      int memberIndex = this.getMemberIndex(memberNumber);
 
-    if (memberIndex == -1) {
-      System.out.println("No such member in system.");
-      return;
-    }
+      if (memberIndex == -1) {
+        this.out.println("No such member in system.");
+        return;
+      }
 
-    if (this.members.get(memberIndex).history().size() < 1) {
-      System.out.println("No rental history for member.");
-      return;
-    }
+      // Copies the history under the member's lock, so that it can be printed while the member rents and returns books
+      List<Book> history;
+      int[] stripes = this.memberLocks.lock(memberIndex);
+      try {
+        history = new ArrayList<Book>(this.members.get(memberIndex).history());
+      } finally {
+        this.memberLocks.unlock(stripes);
+      }
+
+      if (history.size() < 1) {
+        this.out.println("No rental history for member.");
+        return;
+      }
 
-    for (Book b: this.members.get(memberIndex).history()) {
-      System.out.println(b.shortString());
+      for (Book b: history) {
+        this.out.println(b.shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
   }
 
@@ -795,44 +1217,97 @@ public class Library {
   Arguments: filename (String) - The csv file storing the collection of books
   */
   public void addCollection​(String filename) {
-    if (filename == null) {
-      System.out.println("No such collection.");
-      return;
-    }
-    List<Book> booksToAdd = Book.readBookCollection​(filename);
-    int count = 0;
+    this.addCollection(filename, false);
+  }
 
-    if (booksToAdd == null) {
-      System.out.println("No such collection.");
-      return;
-    }
+  /*
+  Purpose: Adds the collection of books stored in a csv file to the system, as for addCollection(filename).
 
-    // Loops through each book to be added, and compares it to all the 
-    //  books in this.books. If there is a match, it is skipped.
-    for (Book b: booksToAdd) {
+           Invoked by the command "ADD COLLECTION [filename] PARALLEL", the file is split into chunks that 
+            are parsed in parallel by ParallelCollectionLoader. The books added, their order and the output 
+            are the same as reading the file sequentially.
 
-      boolean found = false;
+  Arguments: filename (String) - The csv file storing the collection of books, 
+             parallel (boolean) - Whether to parse the file in parallel
+  */
+  public void addCollection(String filename, boolean parallel) {
+    this.catalogLock.writeLock().lock();
+    try {
+      if (filename == null) {
+        this.out.println("No such collection.");
+        return;
+      }
+      int[] count = {0};
+      long start = System.nanoTime();
+      // Shares repeated authors and genres between the books of this file while it is read, so nothing outlives 
+      //  the load. catalogBook then shares them with the books already in the system.
+      StringPool values = new StringPool();
+      long rows;
+
+      if (parallel) {
+        // this.bookIndex is only read while the chunks are parsed, and books are added afterwards in file order.
+        rows = ParallelCollectionLoader.load(filename, values, this.bookIndex::containsKey, b -> {
+          count[0] ++;
+          this.catalogBook(b);
+        });
 
-      for (Book compare: this.books) {
-        if (compare.getSerialNumber().equals(b.getSerialNumber())) {
-          found = true;
-          break;
-        }
+      } else {
+        // Each book is looked up in this.bookIndex as soon as it is read. 
+        //  If it is already in the system (including earlier in the same file), it is skipped.
+        rows = Book.streamBookCollection(filename, values, b -> {
+          if (!this.bookIndex.containsKey(b.getSerialNumber())) {
+            count[0] ++;
+            this.catalogBook(b);
+          }
+        });
       }
 
-      if (!found) {
-        count ++;
-        this.books.add(b);
+      if (rows == -1) {
+        this.out.println("No such collection.");
+        return;
+      }
+      if (STATS) {
+        reportThroughput("Read", rows, "rows", System.nanoTime() - start);
+        System.err.printf("Shared repeated authors and genres, saving about %d bytes (%d distinct values).%n", 
+          values.bytesSaved(), values.size());
+        reportHeap();
       }
-    }
 
-    if (count == 0) {
-      System.out.println("No books have been added to the system.");
-    } else {
-      System.out.printf("%d books successfully added.%n", count);
+      if (count[0] == 0) {
+        this.out.println("No books have been added to the system.");
+      } else {
+        this.out.printf("%d books successfully added.%n", count[0]);
+      }
+    } finally {
+      this.catalogLock.writeLock().unlock();
     }
   }
 
+  /*
+  Purpose: A helper method that prints how quickly a number of items were processed to standard error, 
+           so that it does not mix with command output.
+
+  Format: "[action] [count] [unit] in [ms] ms ([rate] [unit]/sec)."
+
+  Arguments: action (String) - what was done, count (long) - the number of items, 
+             unit (String) - what the items are, nanos (long) - how long it took
+  */
+  private static void reportThroughput(String action, long count, String unit, long nanos) {
+    double seconds = Math.max(nanos, 1) / 1e9;
+    System.err.printf("%s %d %s in %.1f ms (%.0f %s/sec).%n", action, count, unit, seconds * 1000, count / seconds, unit);
+  }
+
+  /*
+  Purpose: A helper method that prints the heap in use after a garbage collection to standard error, 
+           for comparing the memory used by the object-per-book and columnar catalogs.
+  */
+  private static void reportHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long used = runtime.totalMemory() - runtime.freeMemory();
+    System.err.printf("Heap in use: %.1f MB (%s catalog).%n", used / 1048576.0, ColumnarCatalog.ENABLED ? "columnar" : "object");
+  }
+
   // ----------------------------------------------------------------------------------------------
 
   /*
@@ -843,20 +1318,208 @@ public class Library {
             the books stored in the system to a csv file (in the same format as can be 
             read with "ADD COLLECTION [filename").
 
+           Books are only ever added to the end of this.books, so if the file was last saved by this 
+            library and nothing has changed it since, only the books added since then are written, 
+            at the end of the file. Otherwise the whole file is rewritten.
+
            If there are no books in the system, output "No books in system."
+           If the file can't be written, output "Unable to save collection."
            If there are books, write them to the file and output "Success."
   Arguments: filename (String) - The csv file to write the collection to
   */
   public void saveCollection(String filename) {
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
+
+      // Sessions can save at the same time, so the saved collections are only used by one at a time
+      this.savedCollectionsLock.lock();
+      try {
+        long start = System.nanoTime();
+        File file = new File(filename);
+        SavedCollection saved = this.savedCollections.get(file.getAbsolutePath());
+        int size = this.books.size();
+
+        boolean success;
+        int written;
+        if (saved != null && saved.isUnchanged(file) && saved.books() <= size) {
+          written = size - saved.books();
+          success = Book.appendBookCollection(filename, this.books.subList(saved.books(), size));
+        } else {
+          written = size;
+          success = Book.saveBookCollection​(filename, this.books);
+        }
+
+        if (!success) {
+          this.savedCollections.remove(file.getAbsolutePath());
+          this.out.println("Unable to save collection.");
+          return;
+        }
+        this.savedCollections.put(file.getAbsolutePath(), new SavedCollection(file, size));
+
+        if (STATS) {
+          reportThroughput(written == size ? "Saved" : "Appended", written, "rows", System.nanoTime() - start);
+        }
+      } finally {
+        this.savedCollectionsLock.unlock();
+      }
+
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
+  }
+
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  Purpose: Saves the whole state of the system (books, members, current loans, both rental histories 
+            and the next member number) to a binary snapshot file using LibrarySnapshot.
+
+           Invoked by the command "SAVE SNAPSHOT [filename]". 
+           Takes the write lock, as loans change under the read lock and the snapshot has to be consistent.
+
+           If the file can't be written, output "Unable to save snapshot."
+           Otherwise, output "Success."
+  Arguments: filename (String) - The file to write the snapshot to
+  */
+  public void saveSnapshot(String filename) {
+    this.catalogLock.writeLock().lock();
+    try {
+      long start = System.nanoTime();
+      LibrarySnapshot.write(filename, this.books, this.booksByAuthor, this.booksByGenre, this.copyCounts, 
+        this.members, this.nextMemberNumber.get());
+
+      if (STATS) {
+        reportThroughput("Saved snapshot of", this.books.size(), "books", System.nanoTime() - start);
+      }
+      this.out.println("Success.");
+
+    } catch (IOException e) {
+      this.out.println("Unable to save snapshot.");
+    } finally {
+      this.catalogLock.writeLock().unlock();
+    }
+  }
+
+  /*
+  Purpose: Saves the books in the system to a catalog file using MappedCatalog, which can be opened with 
+           --catalog and queried in place without loading it.
+
+           Invoked by the command "SAVE CATALOG [filename]". Only the catalog is saved, not members or loans,
+            so the read lock is enough.
+
+           If the file can't be written, output "Unable to save catalog."
+           Otherwise, output "Success."
+  Arguments: filename (String) - The file to write the catalog to
+  */
+  public void saveCatalog(String filename) {
+    this.catalogLock.readLock().lock();
+    try {
+      long start = System.nanoTime();
+      MappedCatalog.write(filename, this.books, this.booksByAuthor, this.booksByGenre);
+
+      if (STATS) {
+        reportThroughput("Saved catalog of", this.books.size(), "books", System.nanoTime() - start);
+      }
+      this.out.println("Success.");
 
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
+    } catch (IOException e) {
+      this.out.println("Unable to save catalog.");
+    } finally {
+      this.catalogLock.readLock().unlock();
+    }
+  }
+
+  /*
+  Purpose: Replaces the whole state of the system with the state in a snapshot file written by SAVE SNAPSHOT.
+
+           Invoked by the command "LOAD SNAPSHOT [filename]". The file is read completely before anything 
+            in the system is changed. The collections are then cleared and refilled in place, as they are 
+            shared with every session. If a journal is open, it is rewritten to match the loaded state.
+            If that fails, the journal is no longer used (see flush()), as it still describes the old state.
+
+           If the file does not exist, output "No such file."
+           If the file is not a complete snapshot, output "Invalid snapshot."
+           Otherwise, output "Success.", followed by "Unable to write journal." if the journal could not be rewritten.
+  Arguments: filename (String) - The snapshot file
+  */
+  public void loadSnapshot(String filename) {
+    if (filename == null || !new File(filename).isFile()) {
+      this.out.println("No such file.");
+      return;
+    }
+
+    long start = System.nanoTime();
+    LibrarySnapshot snapshot;
+    try {
+      snapshot = LibrarySnapshot.read(filename);
+    } catch (IOException e) {
+      this.out.println("Invalid snapshot.");
       return;
     }
 
-    Book.saveBookCollection​(filename, this.books);
+    this.catalogLock.writeLock().lock();
+    try {
+      this.books.clear();
+      this.books.addAll(snapshot.books);
+      this.bookIndex.clear();
+      this.bookIndex.putAll(snapshot.bookIndex);
+      this.booksByAuthor.clear();
+      this.booksByAuthor.putAll(snapshot.booksByAuthor);
+      this.booksByGenre.clear();
+      this.booksByGenre.putAll(snapshot.booksByGenre);
+
+      // Copying one sorted map into an empty one with the same ordering takes linear time
+      this.authorCounts.clear();
+      this.authorCounts.putAll(snapshot.authorCounts);
+      this.genreCounts.clear();
+      this.genreCounts.putAll(snapshot.genreCounts);
+      this.copyCounts.clear();
+      this.copyCounts.putAll(snapshot.copyCounts);
+      this.copyLines.clear();
+      for (Map.Entry<String,Integer> copies: snapshot.copyCounts.entrySet()) {
+        this.copyLines.add(copyLine(copies.getKey(), copies.getValue()));
+      }
+
+      this.members.clear();
+      for (Member m: snapshot.members) {
+        this.members.add(m);
+      }
+      this.nextMemberNumber.set(snapshot.nextMemberNumber);
 
-    System.out.println("Success.");
+      // The books are different now, so files saved before have to be rewritten in full next time
+      this.savedCollectionsLock.lock();
+      try {
+        this.savedCollections.clear();
+      } finally {
+        this.savedCollectionsLock.unlock();
+      }
+      // Everything has been copied out of the snapshot, so it can be collected
+      snapshot = null;
+
+      if (this.journal != null) {
+        try {
+          this.journal.compact(this::writeState);
+        } catch (IOException e) {
+          // The journal still describes the old state, so nothing more can be added to it
+          System.err.println("Unable to rewrite journal: " + e.getMessage());
+          this.journal.fail(e);
+          this.journalFailed = true;
+        }
+      }
+
+      if (STATS) {
+        reportThroughput("Loaded snapshot of", this.books.size(), "books", System.nanoTime() - start);
+        reportHeap();
+      }
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.writeLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -874,16 +1537,19 @@ public class Library {
   Arguments: name (String) - The name of the member
   */
   public void addMember​(String name) {
-    // Converts the int nextMemberNumber to a string.
-    String memberNumber = String.valueOf(nextMemberNumber);
-
-    // Uses the static class variable nextMemberNumber to store the next available member number.
-    nextMemberNumber++;
+    this.catalogLock.writeLock().lock();
+    try {
+      // Takes the next available member number, which is only ever handed out once.
+      String memberNumber = String.valueOf(this.nextMemberNumber.getAndIncrement());
 
-    Member m = new Member(name, memberNumber);
+      Member m = new Member(name, memberNumber);
 
-    members.add(m);
-    System.out.println("Success.");
+      members.add(m);
+      this.record(Journal.MEMBER, name, memberNumber);
+      this.out.println("Success.");
+    } finally {
+      this.catalogLock.writeLock().unlock();
+    }
   }
 
   // ----------------------------------------------------------------------------------------------
@@ -905,58 +1571,274 @@ public class Library {
   Arguments: memberNumbers (String[]) - The array of member numbers
   */
   public void common(String[] memberNumbers) {
-    if (this.members.size() < 1) {
-      System.out.println("No members in system.");
-      return;
-    }
+    this.catalogLock.readLock().lock();
+    try {
+      if (this.members.size() < 1) {
+        this.out.println("No members in system.");
+        return;
+      }
 
-    if (this.books.size() < 1) {
-      System.out.println("No books in system.");
-      return;
-    }
+      if (this.books.size() < 1) {
+        this.out.println("No books in system.");
+        return;
+      }
 
-    // Converts the array of member numbers to an array of the corresponding Members.
-    Member[] mems = new Member[memberNumbers.length];
-    int index = 0;
+      // Converts the array of member numbers to an array of the corresponding Members.
+      Member[] mems = new Member[memberNumbers.length];
+      int index = 0;
 
-    //Checking for duplicates
-    for (String n: memberNumbers) {
+      //Checking for duplicates
+      for (String n: memberNumbers) {
 
-      int matches = 0;
+        int matches = 0;
+
+        for (String l: memberNumbers) {
+          if (n.equals(l)) {
+            matches ++;
+          }
+        }
+
+        if (matches > 1) {
+          this.out.println("Duplicate members provided.");
+          return;
+        }
+      }
 
-      for (String l: memberNumbers) {
-        if (n.equals(l)) {
-          matches ++;
+      // Takes the checked member numbers and retrieves the corresponding members.
+      int[] memberIndexes = new int[memberNumbers.length];
+      for (String n: memberNumbers) {
+        int memberIndex = getMemberIndex(n);
+        if (memberIndex == -1) {
+          this.out.println("No such member in system.");
+          return;
         }
+        memberIndexes[index] = memberIndex;
+        mems[index] = this.members.get(memberIndex);
+        index ++;
       }
 
-      if (matches > 1) {
-        System.out.println("Duplicate members provided.");
+      // All the members are locked while their histories are compared
+      List<Book> commonBooks;
+      int[] stripes = this.memberLocks.lock(memberIndexes);
+      try {
+        commonBooks = Member.commonBooks​(mems);
+      } finally {
+        this.memberLocks.unlock(stripes);
+      }
+
+      if (commonBooks.size() < 1) {
+        this.out.println("No common books.");
         return;
       }
+
+      for (Book b: commonBooks) {
+        this.out.println(b.shortString());
+      }
+    } finally {
+      this.catalogLock.readLock().unlock();
     }
+  }
 
-    // Takes the checked member numbers and retrieves the corresponding members.
-    for (String n: memberNumbers) {
-      int memberIndex = getMemberIndex(n);
-      if (memberIndex == -1) {
-        System.out.println("No such member in system.");
+  // ----------------------------------------------------------------------------------------------
+
+  /*
+  Purpose: Opens the journal in the given file, restores the members, books, loans and rental histories 
+           recorded in it, and from then on records every change in it (see Journal).
+           Should be called before any commands are run.
+  Arguments: filename (String) - The journal file, created if it does not exist
+  */
+  public void openJournal(String filename) throws IOException {
+    Journal opened = Journal.open(filename);
+    long start = System.nanoTime();
+    long records;
+
+    this.catalogLock.writeLock().lock();
+    try {
+      records = opened.replay(this::replayRecord);
+      this.journal = opened;
+    } finally {
+      this.catalogLock.writeLock().unlock();
+    }
+
+    if (STATS) {
+      reportThroughput("Replayed", records, "journal records", System.nanoTime() - start);
+    }
+    if (this.journal.needsCompaction()) {
+      this.compactJournal();
+    }
+  }
+
+  /*
+  Purpose: A helper method that applies one record read from the journal, without printing anything 
+           or recording it in the journal again. Records are only ever written for changes that succeeded, 
+           so a record that no longer applies (e.g. a book that is already in the system) is skipped.
+  Arguments: type (byte) - The record type, fields (String[]) - The record's fields (see Journal)
+  */
+  private void replayRecord(byte type, String[] fields) {
+    switch (type) {
+      case Journal.MEMBER: {
+        this.members.add(new Member(fields[0], fields[1]));
+        int next = Integer.parseInt(fields[1]) + 1;
+        this.nextMemberNumber.accumulateAndGet(next, Math::max);
+        break;
+      }
+      case Journal.BOOK: {
+        if (!this.bookIndex.containsKey(fields[0])) {
+          this.catalogBook(new Book(fields[1], fields[2], fields[3], fields[0]));
+        }
+        break;
+      }
+      case Journal.RENT:
+      case Journal.RELINQUISH: {
+        int memberIndex = this.getMemberIndex(fields[0]);
+        int bookIndex = this.getBookIndex(fields[1]);
+        if (memberIndex == -1 || bookIndex == -1) {
+          break;
+        }
+        if (type == Journal.RENT) {
+          this.members.get(memberIndex).rent(this.pinBook(bookIndex));
+        } else {
+          this.members.get(memberIndex).relinquish(this.books.get(bookIndex));
+        }
+        break;
+      }
+      case Journal.RELINQUISH_ALL: {
+        int memberIndex = this.getMemberIndex(fields[0]);
+        if (memberIndex != -1) {
+          this.members.get(memberIndex).relinquishAll();
+        }
+        break;
+      }
+      case Journal.BOOK_HISTORY: {
+        int bookIndex = this.getBookIndex(fields[0]);
+        if (bookIndex == -1) {
+          break;
+        }
+        // Members that are not in the system are left out of the history
+        List<Member> history = new ArrayList<Member>(fields.length - 1);
+        for (int i = 1; i < fields.length; i++) {
+          int memberIndex = this.getMemberIndex(fields[i]);
+          if (memberIndex != -1) {
+            history.add(this.members.get(memberIndex));
+          }
+        }
+        if (history.size() < fields.length - 1) {
+          System.err.printf("Journal: skipped %d unknown members in the history of book %s.%n", 
+            fields.length - 1 - history.size(), fields[0]);
+        }
+        this.pinBook(bookIndex).restoreHistory(history.toArray(new Member[0]));
+        break;
+      }
+      case Journal.MEMBER_HISTORY: {
+        int memberIndex = this.getMemberIndex(fields[0]);
+        if (memberIndex == -1) {
+          break;
+        }
+        // Books that are not in the system are left out of the history
+        List<Book> history = new ArrayList<Book>(fields.length - 1);
+        for (int i = 1; i < fields.length; i++) {
+          int bookIndex = this.getBookIndex(fields[i]);
+          if (bookIndex != -1) {
+            history.add(this.pinBook(bookIndex));
+          }
+        }
+        if (history.size() < fields.length - 1) {
+          System.err.printf("Journal: skipped %d unknown books in the history of member %s.%n", 
+            fields.length - 1 - history.size(), fields[0]);
+        }
+        this.members.get(memberIndex).restoreHistory(history.toArray(new Book[0]));
+        break;
+      }
+      default:
+        System.err.println("Journal: skipping record of unknown type " + type + ".");
+    }
+  }
+
+  /*
+  Purpose: A helper method that appends a record of a change to the journal, if one is open.
+           If the journal can no longer be written, the failure is reported after the command (see flush()).
+  Arguments: type (byte) - The record type, fields (String...) - The record's fields (see Journal)
+  */
+  private void record(byte type, String... fields) {
+    if (this.journal == null) {
+      return;
+    }
+    try {
+      this.journalMark = this.journal.append(type, fields);
+    } catch (IOException e) {
+      this.journalFailed = true;
+    }
+  }
+
+  /*
+  Purpose: A helper method that rewrites the journal as the records needed to rebuild the current state 
+           (members, books, rental histories and current loans), so it does not grow forever. 
+           Takes the write lock so nothing changes while the state is written.
+  */
+  private void compactJournal() {
+    this.catalogLock.writeLock().lock();
+    try {
+      if (!this.journal.needsCompaction()) {
         return;
       }
-      mems[index] = this.members.get(index);
-      index ++;
+      long start = System.nanoTime();
+      this.journal.compact(this::writeState);
+
+      if (STATS) {
+        reportThroughput("Compacted journal to", this.books.size() + this.members.size(), "books and members", 
+          System.nanoTime() - start);
+      }
+    } catch (IOException e) {
+      System.err.println("Unable to compact journal: " + e.getMessage());
+    } finally {
+      this.catalogLock.writeLock().unlock();
+    }
+  }
+
+  /*
+  Purpose: A helper method that writes the records for the current state of the library, 
+           in an order replayRecord() can apply them in: members and books first, then histories, then loans.
+  Arguments: writer (Journal.Writer) - Where to write the records
+  */
+  private void writeState(Journal.Writer writer) throws IOException {
+    for (int i = 0; i < this.members.size(); i++) {
+      Member m = this.members.get(i);
+      writer.write(Journal.MEMBER, m.getName(), m.getMemberNumber());
+    }
+    for (Book b: this.books) {
+      writer.write(Journal.BOOK, b.getSerialNumber(), b.getTitle(), b.getAuthor(), b.getGenre());
     }
-    
 
-    List<Book> commonBooks = Member.commonBooks​(mems);
+    for (Book b: this.books) {
+      List<Member> history = b.renterHistory();
+      if (history.size() > 0) {
+        String[] fields = new String[history.size() + 1];
+        fields[0] = b.getSerialNumber();
+        for (int i = 0; i < history.size(); i++) {
+          fields[i + 1] = history.get(i).getMemberNumber();
+        }
+        writer.write(Journal.BOOK_HISTORY, fields);
+      }
+    }
 
-    if (commonBooks.size() < 1) {
-      System.out.println("No common books.");
-      return;
+    for (int i = 0; i < this.members.size(); i++) {
+      Member m = this.members.get(i);
+      List<Book> history = m.history();
+      if (history.size() > 0) {
+        String[] fields = new String[history.size() + 1];
+        fields[0] = m.getMemberNumber();
+        for (int j = 0; j < history.size(); j++) {
+          fields[j + 1] = history.get(j).getSerialNumber();
+        }
+        writer.write(Journal.MEMBER_HISTORY, fields);
+      }
     }
 
-    for (Book b: commonBooks) {
-      System.out.println(b.shortString());
+    for (int i = 0; i < this.members.size(); i++) {
+      Member m = this.members.get(i);
+      for (Book b: m.renting()) {
+        writer.write(Journal.RENT, m.getMemberNumber(), b.getSerialNumber());
+      }
     }
   }
 
@@ -964,38 +1846,240 @@ public class Library {
 
   /*
   Purpose: The main method of the entire program.
+           "java Library" reads commands from the keyboard.
+           "java Library --batch [file]" runs the commands in the file (or standard input) in batch mode.
+           "java Library --server [port]" serves the library to connections on a local port (see LibraryServer).
+           Any of these can be preceded by "--journal <file>" to restore the library from a journal file 
+           and record every change in it.
   Arguments: args (String[]) - Command line arguments
   */
   public static void main(String[] args) {
+    // A read only kiosk over a catalog file written by SAVE CATALOG, without loading any books
+    if (args.length > 1 && args[0].equals("--catalog")) {
+      MappedCatalog catalog;
+      try {
+        catalog = MappedCatalog.open(args[1]);
+      } catch (NoSuchFileException e) {
+        System.err.println("No such file.");
+        System.exit(1);
+        return;
+      } catch (IOException e) {
+        System.err.println("Invalid catalog.");
+        System.exit(1);
+        return;
+      }
+      PrintStream out = new PrintStream(new BufferedOutputStream(System.out, OUTPUT_BUFFER_SIZE), false);
+      new CatalogKiosk(catalog, out).run(new BufferedReader(new InputStreamReader(System.in)));
+      return;
+    }
+
     Library lib = new Library();
+
+    if (args.length > 1 && args[0].equals("--journal")) {
+      try {
+        lib.openJournal(args[1]);
+      } catch (IOException e) {
+        System.err.println("Unable to open journal: " + e.getMessage());
+        System.exit(1);
+        return;
+      }
+      args = Arrays.copyOfRange(args, 2, args.length);
+    }
+
+    if (args.length > 0 && args[0].equals("--server")) {
+      int port = LibraryServer.DEFAULT_PORT;
+      try {
+        if (args.length > 1) {
+          port = Integer.parseInt(args[1]);
+        }
+        new LibraryServer(lib, port).serve();
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid port: " + args[1]);
+        System.exit(1);
+      } catch (IOException e) {
+        System.err.println("Unable to start server: " + e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    if (args.length > 0 && args[0].equals("--batch")) {
+      Reader in;
+      if (args.length > 1) {
+        try {
+          in = Files.newBufferedReader(Paths.get(args[1]));
+        } catch (IOException e) {
+          System.err.println("No such file.");
+          System.exit(1);
+          return;
+        }
+      } else {
+        in = new InputStreamReader(System.in);
+      }
+      lib.runBatch(in);
+      return;
+    }
+
     lib.run();
   }
 
   // ----------------------------------------------------------------------------------------------
 
   /*
-  Purpose: Takes user input and converts it to a String array, which is passed to runCommand
+  Purpose: Takes user input from the keyboard and passes each line to runCommand.
   */
   public void run() {
-    Scanner keyboard = new Scanner(System.in);
-    System.out.print("user: ");
+    this.run(new BufferedReader(new InputStreamReader(System.in)));
+  }
 
-    while (keyboard.hasNextLine()) {
-      
-      String commandString = keyboard.nextLine();
-      String[] command = commandString.toUpperCase().split(" ");
+  /*
+  Purpose: Takes user input from the given reader, splits each line into a CommandLine and passes it 
+           to runCommand, printing the "user: " prompt before each command.
+           Output is flushed once per command, after the next prompt has been printed.
+  Arguments: keyboard (BufferedReader) - The user input, one command per line
+  */
+  public void run(BufferedReader keyboard) {
+    this.out.print("user: ");
+    this.flush();
+
+    try {
+      String commandString;
+      while ((commandString = keyboard.readLine()) != null) {
+        CommandLine command = CommandLine.parse(commandString);
+
+        if (command.is(0, "EXIT")) {
+          this.out.println("Ending Library process.");
+          this.flush();
+          return;
+        }
+        
+        this.runCommand(command);
+        this.awaitJournal();
+        this.out.println();
+        this.out.print("user: ");
+        this.flush();
+      }
+    } catch (IOException e) {
+      System.err.println("Unable to read commands: " + e.getMessage());
+    }
+    this.flush();
+  }
+
+  /*
+  Purpose: Runs a script of commands without any interaction, for replaying large command files.
+           No prompts or blank lines are printed between commands, so the output is just the 
+           output of each command. The script ends at the end of the input or at an EXIT command.
+
+           Reading and splitting lines happens on a separate thread, which passes batches of 
+           split commands to this thread through a bounded queue, so parsing runs ahead of execution.
+           The output of each batch is written out once its changes are in the journal, if one is open, 
+           so a failed journal write is reported after that batch and later changes are refused.
+           With -Dlibrary.stats=true, the number of commands run per second is printed to standard error.
 
-      // commandLower is used for filenames, member names, authors and genres where capitalisation matters
-      String[] commandLower = commandString.split(" ");
+  Arguments: in (Reader) - The commands to run, one per line
+  */
+  public void runBatch(Reader in) {
+    BlockingQueue<List<CommandLine>> queue = new ArrayBlockingQueue<List<CommandLine>>(BATCH_QUEUE_SIZE);
+    BufferedReader lines = new BufferedReader(in, OUTPUT_BUFFER_SIZE);
 
-      if (command[0].equals("EXIT")) {
-        System.out.println("Ending Library process.");
+    Thread parser = new Thread(() -> {
+      List<CommandLine> batch = new ArrayList<CommandLine>(BATCH_SIZE);
+      try {
+        String commandString;
+        while ((commandString = lines.readLine()) != null) {
+          batch.add(CommandLine.parse(commandString));
+
+          if (batch.size() == BATCH_SIZE) {
+            queue.put(batch);
+            batch = new ArrayList<CommandLine>(BATCH_SIZE);
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("Unable to read commands: " + e.getMessage());
+      } catch (InterruptedException e) {
         return;
       }
-      
-      this.runCommand(command, commandLower);
-      System.out.println();
-      System.out.print("user: ");
+
+      // An empty batch marks the end of the input
+      try {
+        if (!batch.isEmpty()) {
+          queue.put(batch);
+        }
+        queue.put(new ArrayList<CommandLine>());
+      } catch (InterruptedException e) {
+        return;
+      }
+    });
+    parser.setDaemon(true);
+    parser.start();
+
+    long count = 0;
+    long start = System.nanoTime();
+
+    try {
+      commands:
+      while (true) {
+        List<CommandLine> batch = queue.take();
+        if (batch.isEmpty()) {
+          break;
+        }
+
+        for (CommandLine c: batch) {
+          count++;
+          if (c.is(0, "EXIT")) {
+            this.out.println("Ending Library process.");
+            break commands;
+          }
+          this.runCommand(c);
+          // A change that could not be recorded, or was refused, is reported straight after its command
+          if (this.journalFailed) {
+            this.awaitJournal();
+          }
+        }
+        // The output is held in memory until flushed, so it is written out after each batch of commands,
+        //  once the batch's changes are in the journal
+        this.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      parser.interrupt();
+      this.flush();
+    }
+
+    if (STATS) {
+      reportThroughput("Executed", count, "commands", System.nanoTime() - start);
+    }
+  }
+
+  /*
+  Purpose: Writes out any command output still held in the output buffer.
+           run() does this after every command, so this is only needed when calling command methods directly.
+  */
+  public void flush() {
+    this.awaitJournal();
+    this.out.flush();
+  }
+
+  /*
+  Purpose: A helper method that waits until the changes made by this session are safely in the journal, if one is open,
+           as nothing is shown to the user until then. If they could not be written, or a change was refused
+           because the journal had already failed, output "Unable to write journal."
+  */
+  private void awaitJournal() {
+    boolean failed = this.journalFailed;
+    this.journalFailed = false;
+    if (this.journal != null) {
+      try {
+        this.journal.awaitDurable(this.journalMark);
+      } catch (IOException e) {
+        // Reported once, as the records will never be written
+        this.journalMark = 0;
+        failed = true;
+      }
+    }
+    if (failed) {
+      this.out.println("Unable to write journal.");
     }
   }
 
@@ -1003,153 +2087,194 @@ public class Library {
 
   /*
   Purpose: Takes in a String array of words in the commad, and calls the corresponding methods.
+  Arguments: command (String[]) - The words of the command in upper case, 
+             commandLower (String[]) - The words of the command as they were typed
   */
   public void runCommand(String[] command, String[] commandLower) {
-    String c1 = command[0];
-    boolean longStringFormat = false;
+    this.runCommand(CommandLine.parse(String.join(" ", commandLower)));
+  }
 
-    // Processes single word commands first
-    if (c1.equals("EXIT")) {
-      return;
-    } else if (c1.equals("COMMANDS")) {
-      System.out.println(Library.HELP_STRING);
+  /*
+  Purpose: Takes in a command typed by the user, and calls the corresponding methods.
+  Arguments: commandString (String) - The command
+  */
+  public void runCommand(String commandString) {
+    this.runCommand(CommandLine.parse(commandString));
+  }
+
+  /*
+  Purpose: Looks up the first word of the command in COMMAND_TABLE, and calls the corresponding handler.
+           Unknown commands, and commands missing their arguments, do nothing.
+  Arguments: command (CommandLine) - The split command
+  */
+  private void runCommand(CommandLine command) {
+    if (command.size() < 1) {
       return;
     }
 
-    String c2 = command[1];
-    
-    if (c1.equals("LIST")) {
-
-      if (command.length == 3) {
-        if (command[2].equals("LONG")) {
-          longStringFormat = true;
-        }
-      }
+    Handler handler = COMMAND_TABLE.get(command, 0);
+    if (handler != null) {
+      handler.run(this, command);
+    }
 
-      if (c2.equals("ALL")) {
-        this.getAllBooks​(longStringFormat);
-        return;
+    if (this.journal != null && this.journal.needsCompaction()) {
+      this.compactJournal();
+    }
+  }
 
-      } else if (c2.equals("AVAILABLE")) {
-        this.getAvailableBooks​(longStringFormat);
-        return;
+  // ----------------------------------------------------------------------------------------------
 
-      } else if (c2.equals("GENRES")) {
-        this.getGenres();
-        return;
+  /*
+  A command handler, which runs a command on a library once its first word has been matched.
+  */
+  private interface Handler {
+    void run(Library lib, CommandLine command);
+  }
 
-      } else if (c2.equals("AUTHORS")) {
-        this.getAuthors();
-        return;
+  // The handlers for every command, by first word (matched ignoring case, without copying the word).
+  private static final CommandTable<Handler> COMMAND_TABLE = new CommandTable<Handler>();
+
+  static {
+    COMMAND_TABLE.put("EXIT", (lib, c) -> {});
+    COMMAND_TABLE.put("COMMANDS", (lib, c) -> lib.out.println(Library.HELP_STRING));
+
+    // LIST ALL [LONG], LIST AVAILABLE [LONG], LIST GENRES, LIST AUTHORS
+    CommandTable<Handler> list = subcommandTable();
+    list.put("ALL", (lib, c) -> lib.getAllBooks​(isLong(c)));
+    list.put("AVAILABLE", (lib, c) -> lib.getAvailableBooks​(isLong(c)));
+    list.put("GENRES", (lib, c) -> lib.getGenres());
+    list.put("AUTHORS", (lib, c) -> lib.getAuthors());
+    COMMAND_TABLE.put("LIST", subcommands(list, null));
+
+    // NUMBER COPIES
+    CommandTable<Handler> number = subcommandTable();
+    number.put("COPIES", (lib, c) -> lib.getCopies());
+    COMMAND_TABLE.put("NUMBER", subcommands(number, null));
+
+    // GENRE <genre>, AUTHOR <author>, where the genre or author can be multiple words
+    COMMAND_TABLE.put("GENRE", arguments(2, (lib, c) -> lib.getBooksByGenre​(c.rest(1))));
+    COMMAND_TABLE.put("AUTHOR", arguments(2, (lib, c) -> lib.getBooksByAuthor​(c.rest(1))));
+
+    // BOOK HISTORY <serialNumber>, BOOK <serialNumber> [LONG]
+    CommandTable<Handler> book = subcommandTable();
+    book.put("HISTORY", arguments(3, (lib, c) -> lib.bookHistory​(c.upper(2))));
+    COMMAND_TABLE.put("BOOK", subcommands(book, (lib, c) -> lib.getBook​(c.upper(1), isLong(c))));
+
+    // MEMBER BOOKS <memberNumber>, MEMBER HISTORY <memberNumber>, MEMBER <memberNumber>
+    CommandTable<Handler> member = subcommandTable();
+    member.put("BOOKS", arguments(3, (lib, c) -> lib.getMemberBooks(c.upper(2))));
+    member.put("HISTORY", arguments(3, (lib, c) -> lib.memberRentalHistory(c.upper(2))));
+    COMMAND_TABLE.put("MEMBER", subcommands(member, (lib, c) -> lib.getMember(c.upper(1))));
+
+    // RENT <memberNumber> <serialNumber>
+    COMMAND_TABLE.put("RENT", changes(arguments(3, (lib, c) -> lib.rentBook(c.upper(1), c.upper(2)))));
+
+    // RELINQUISH ALL <memberNumber>, RELINQUISH <memberNumber> <serialNumber>
+    CommandTable<Handler> relinquish = subcommandTable();
+    relinquish.put("ALL", arguments(3, (lib, c) -> lib.relinquishAll(c.upper(2))));
+    COMMAND_TABLE.put("RELINQUISH", changes(subcommands(relinquish, arguments(3, (lib, c) -> lib.relinquishBook(c.upper(1), c.upper(2))))));
+
+    // ADD MEMBER <name>, ADD BOOK <file> <serialNumber>, ADD BOOKS <file> <serialNumber> ..., 
+    // ADD BOOKS <file> FROM <serialFile>, ADD COLLECTION <file> [PARALLEL]
+    CommandTable<Handler> add = subcommandTable();
+    add.put("MEMBER", arguments(3, (lib, c) -> lib.addMember​(c.rest(2))));
+    add.put("BOOK", arguments(4, (lib, c) -> lib.addBook(c.word(2), c.word(3))));
+    add.put("BOOKS", arguments(3, (lib, c) -> {
+      // Serial numbers are either listed after the file, or read from the file after FROM
+      List<String> serialNumbers;
+      if (c.size() == 5 && c.is(3, "FROM")) {
+        serialNumbers = readSerialNumbers(c.word(4));
+      } else {
+        serialNumbers = Arrays.asList(c.words(3));
       }
-
-    } else if (c1.equals("NUMBER")) {
-      
-      if (c2.equals("COPIES")) {
-        this.getCopies();
-        return;
+      lib.addBooks(c.word(2), serialNumbers);
+    }));
+    add.put("COLLECTION", arguments(3, (lib, c) -> lib.addCollection(c.word(2), c.size() == 4 && c.is(3, "PARALLEL"))));
+    COMMAND_TABLE.put("ADD", changes(subcommands(add, null)));
+
+    // SAVE SNAPSHOT <file>, SAVE CATALOG <file>, SAVE COLLECTION <file>
+    CommandTable<Handler> save = subcommandTable();
+    save.put("SNAPSHOT", arguments(3, (lib, c) -> lib.saveSnapshot(c.word(2))));
+    save.put("CATALOG", arguments(3, (lib, c) -> lib.saveCatalog(c.word(2))));
+    COMMAND_TABLE.put("SAVE", subcommands(save, arguments(3, (lib, c) -> lib.saveCollection(c.word(2)))));
+
+    // LOAD SNAPSHOT <file>
+    CommandTable<Handler> load = subcommandTable();
+    load.put("SNAPSHOT", arguments(3, (lib, c) -> lib.loadSnapshot(c.word(2))));
+    COMMAND_TABLE.put("LOAD", changes(subcommands(load, null)));
+
+    // COMMON <memberNumber1> <memberNumber2> ...
+    COMMAND_TABLE.put("COMMON", arguments(2, (lib, c) -> {
+      String[] members = c.words(1);
+      for (int i = 0; i < members.length; i++) {
+        members[i] = members[i].toUpperCase();
       }
+      lib.common(members);
+    }));
+  }
 
-    } else if (c1.equals("GENRE")) {
-      String genre = "";
+  /*
+  Purpose: A helper method for COMMAND_TABLE that creates an empty table of handlers by second word.
+  */
+  private static CommandTable<Handler> subcommandTable() {
+    return new CommandTable<Handler>();
+  }
 
-      // Allows for multi word genres, takes all words after GENRE and combines them into a string
-      for (int i = 1; i < commandLower.length; i ++) {
-        genre += commandLower[i];
-        if (i < commandLower.length-1) {
-          genre += " ";
-        }
+  /*
+  Purpose: A helper method for COMMAND_TABLE that creates a handler which looks up the second word of 
+           the command in the given table. 
+  Arguments: table (CommandTable<Handler>) - The handlers by second word,
+             otherwise (Handler) - The handler to use when the second word is not in the table, or null to do nothing
+  */
+  private static Handler subcommands(CommandTable<Handler> table, Handler otherwise) {
+    return (lib, c) -> {
+      if (c.size() < 2) {
+        return;
       }
-      this.getBooksByGenre​(genre);
-      return;
-      
-    } else if (c1.equals("AUTHOR")) {
-      String author = "";
-      // Allows for multi word names, takes all words after AUTHOR and combines them into a string
-      for (int i = 1; i < commandLower.length; i ++) {
-        author += commandLower[i];
-        if (i < commandLower.length-1) {
-          author += " ";
-        }
+      Handler handler = table.get(c, 1);
+      if (handler == null) {
+        handler = otherwise;
       }
-      this.getBooksByAuthor​(author);
-      return;
-      
-    } else if (c1.equals("BOOK")) {
-      if (c2.equals("HISTORY")) {
-        String serial = command[2];
-        this.bookHistory​(serial);
-        return;
+      if (handler != null) {
+        handler.run(lib, c);
       }
+    };
+  }
 
-      if (command.length == 3) {
-        if (command[2].equals("LONG")) {
-          longStringFormat = true;
+  /*
+  Purpose: A helper method for COMMAND_TABLE that wraps the handler of a command that changes the library.
+           Once the journal has failed, such commands are refused, so nothing changes that can't be saved.
+  */
+  private static Handler changes(Handler handler) {
+    return (lib, c) -> {
+      if (lib.journal != null) {
+        try {
+          lib.journal.checkWritable();
+        } catch (IOException e) {
+          lib.journalFailed = true;
+          return;
         }
       }
-      this.getBook(c2, longStringFormat);
-      return;
-      
-      
-    } else if (c1.equals("MEMBER")) {
-      if (c2.equals("BOOKS")) {
-        this.getMemberBooks(command[2]);
-        return;
-      } 
-      if (c2.equals("HISTORY")){
-        this.memberRentalHistory(command[2]);
-        return;
-      }
+      handler.run(lib, c);
+    };
+  }
 
-      this.getMember(c2);
-      return;
-      
-    } else if (c1.equals("RENT")) {
-      this.rentBook(c2, command[2]);
-      
-    } else if (c1.equals("RELINQUISH")) {
-      if (c2.equals("ALL")) {
-        this.relinquishAll(command[2]);
-        return;
+  /*
+  Purpose: A helper method for COMMAND_TABLE that creates a handler which only runs if the command has 
+           at least the given number of words (including the command itself).
+  */
+  private static Handler arguments(int words, Handler handler) {
+    return (lib, c) -> {
+      if (c.size() >= words) {
+        handler.run(lib, c);
       }
-      this.relinquishBook(c2, command[2]);
-      return;
-      
-    } else if (c1.equals("ADD")) {
-
-      if (c2.equals("MEMBER")) {
-        // Allows for multi word names, takes all words after Member and combines them into a string
-        String name = "";
-        int len = command.length;
-        String[] nameParts = Arrays.copyOfRange(commandLower, 2, len);
-        
-        for (String p: nameParts) {
-          name += p;
-          name += " ";
-        }
-        name  = name.substring(0, name.length()-1);
-        this.addMember​(name);
-        return;
+    };
+  }
 
-      } else if (c2.equals("BOOK")) {
-        this.addBook(commandLower[2], commandLower[3]);
-        return;
-      } else if (c2.equals("COLLECTION")) {
-        this.addCollection​(commandLower[2]);
-        return;
-      }
-      
-    } else if (c1.equals("SAVE")) {
-      this.saveCollection(commandLower[2]);
-      return;
-      
-    } else if (c1.equals("COMMON")) {
-      int len = command.length;
-      String[] members = Arrays.copyOfRange(command, 1, len);
-      
-
-      this.common(members);
-      
-    }
+  /*
+  Purpose: A helper method for COMMAND_TABLE that checks for the LONG flag as the third word of a command.
+  */
+  private static boolean isLong(CommandLine c) {
+    return c.size() == 3 && c.is(2, "LONG");
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class LibraryServer {
+  public static final int DEFAULT_PORT = 7878;
+
+  private Library library;
+  private int port;
+
+  /*
+  Constructor
+  Arguments: library (Library) - The library every connection works on, port (int) - The port to listen on.
+  */
+  public LibraryServer(Library library, int port) {
+    this.library = library;
+    this.port = port;
+  }
+
+  /*
+  Purpose: Listens on the given port of the loopback address, and runs each connection as its own
+           session of the library on its own thread, until the process is stopped.
+           Each session reads commands and prints prompts exactly as the console does, so the output
+           for a sequence of commands is the same. EXIT ends the session, not the server.
+  */
+  public void serve() throws IOException {
+    ExecutorService sessions = newSessionExecutor();
+
+    try (ServerSocket server = new ServerSocket(this.port, 0, InetAddress.getLoopbackAddress())) {
+      System.err.printf("Listening on %s:%d.%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+
+      while (true) {
+        Socket socket = server.accept();
+        sessions.execute(() -> this.runSession(socket));
+      }
+    } finally {
+      sessions.shutdown();
+    }
+  }
+
+  /*
+  Purpose: Helper method that runs the commands sent over one connection, then closes it.
+  Arguments: socket (Socket) - The connection.
+  */
+  private void runSession(Socket socket) {
+    try (Socket s = socket) {
+      // Uses the default charset, the same as the console does
+      BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+      // Each command's output is held in memory and only sent once the command has released its locks, so a 
+      //  client that stops reading only holds up its own session
+      PrintStream out = new PrintStream(new CommandOutput(s.getOutputStream()), false);
+
+      this.library.session(out).run(in);
+
+    } catch (IOException e) {
+      System.err.println("Connection failed: " + e.getMessage());
+    }
+  }
+
+  /*
+  Purpose: Helper method that returns an executor running each task on a new virtual thread,
+           so that idle connections cost almost nothing. Virtual threads need Java 21, so on older
+           versions (where the method does not exist) a cached pool of platform threads is used instead.
+  Returns: The executor (ExecutorService).
+  */
+  private static ExecutorService newSessionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
@@ -0,0 +1,302 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class LibrarySnapshot {
+  // "LSNP", followed by the format version. Files with another version are rejected.
+  private static final int MAGIC = 0x4C534E50;
+  private static final int VERSION = 1;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  // The state read from a snapshot, in the form the Library keeps it.
+  // Loans and rental histories are already set on the books and members.
+  List<Book> books;
+  Map<String,Integer> bookIndex;
+  Map<String,IntList> booksByAuthor;
+  Map<String,IntList> booksByGenre;
+  TreeMap<String,Integer> authorCounts;
+  TreeMap<String,Integer> genreCounts;
+  Map<String,Integer> copyCounts;
+  List<Member> members;
+  int nextMemberNumber;
+
+  /*
+  Constructor
+  */
+  private LibrarySnapshot() {
+  }
+
+  /*
+  Purpose: Writes the whole state of a library to a binary file, laid out so that it can be read back
+           in one sequential pass without parsing or sorting anything:
+
+           header       MAGIC, VERSION
+           strings      every distinct title, author and genre, referred to by position from then on
+           books        serial number, numeric serial number, title, author, genre, in catalog order
+           indexes      the author and genre postings (positions of books, already in serial number order)
+           copies       the copy counts, already in short string order
+           members      name and member number, in member number order, then nextMemberNumber
+           loans        for each member, the positions of the books they are renting, in the order rented
+           histories    for each book, the positions of the members who returned it, in order,
+                        then for each member, the positions of the books they returned, in order
+
+           The file is replaced in one step using AtomicFile, so a failed save leaves the previous snapshot in place.
+           The caller must make sure nothing changes while this runs.
+  Arguments: filename - The file to write (String), books - The books (List<Book>),
+             booksByAuthor, booksByGenre - The postings by author and genre (Map<String,IntList>),
+             copyCounts - The copy counts (Map<String,Integer>), members - The members (MemberDirectory),
+             nextMemberNumber - The next member number to hand out (int).
+  */
+  public static void write(String filename, List<Book> books, Map<String,IntList> booksByAuthor,
+      Map<String,IntList> booksByGenre, Map<String,Integer> copyCounts, MemberDirectory members,
+      int nextMemberNumber) throws IOException {
+
+    // Numbers every distinct title, author and genre, and every member by object, for the references below
+    StringDictionary strings = new StringDictionary();
+    int[] fields = new int[books.size() * 3];
+    int slot = 0;
+    for (Book b: books) {
+      fields[slot * 3] = strings.idOf(b.getTitle());
+      fields[slot * 3 + 1] = strings.idOf(b.getAuthor());
+      fields[slot * 3 + 2] = strings.idOf(b.getGenre());
+      slot++;
+    }
+
+    Map<Member,Integer> memberIndex = new HashMap<Member,Integer>();
+    for (int i = 0; i < members.size(); i++) {
+      memberIndex.put(members.get(i), i);
+    }
+    Map<String,Integer> bookIndex = new HashMap<String,Integer>();
+
+    AtomicFile.write(filename, file -> {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      out.writeInt(strings.size());
+      for (int i = 0; i < strings.size(); i++) {
+        out.writeUTF(strings.get(i));
+      }
+
+      out.writeInt(books.size());
+      int position = 0;
+      for (Book b: books) {
+        out.writeUTF(b.getSerialNumber());
+        out.writeLong(b.getSerialKey());
+        out.writeInt(fields[position * 3]);
+        out.writeInt(fields[position * 3 + 1]);
+        out.writeInt(fields[position * 3 + 2]);
+        bookIndex.put(b.getSerialNumber(), position);
+        position++;
+      }
+
+      writePostings(out, booksByAuthor, strings);
+      writePostings(out, booksByGenre, strings);
+
+      out.writeInt(copyCounts.size());
+      for (Map.Entry<String,Integer> copies: copyCounts.entrySet()) {
+        out.writeUTF(copies.getKey());
+        out.writeInt(copies.getValue());
+      }
+
+      out.writeInt(members.size());
+      for (int i = 0; i < members.size(); i++) {
+        out.writeUTF(members.get(i).getName());
+        out.writeUTF(members.get(i).getMemberNumber());
+      }
+      out.writeInt(nextMemberNumber);
+
+      for (int i = 0; i < members.size(); i++) {
+        List<Book> renting = members.get(i).renting();
+        out.writeInt(renting.size());
+        for (Book b: renting) {
+          out.writeInt(bookIndex.get(b.getSerialNumber()));
+        }
+      }
+
+      // Only books that have been rented have a history, so they are listed by position
+      int rentedBooks = 0;
+      for (Book b: books) {
+        if (b.renterHistory().size() > 0) {
+          rentedBooks++;
+        }
+      }
+      out.writeInt(rentedBooks);
+      position = 0;
+      for (Book b: books) {
+        List<Member> history = b.renterHistory();
+        if (history.size() > 0) {
+          out.writeInt(position);
+          out.writeInt(history.size());
+          for (Member m: history) {
+            out.writeInt(memberIndex.get(m));
+          }
+        }
+        position++;
+      }
+
+      for (int i = 0; i < members.size(); i++) {
+        List<Book> history = members.get(i).history();
+        out.writeInt(history.size());
+        for (Book b: history) {
+          out.writeInt(bookIndex.get(b.getSerialNumber()));
+        }
+      }
+      out.close();
+    });
+  }
+
+  /*
+  Purpose: Reads a snapshot written by write(). Nothing is shared with the running library until the
+           whole file has been read, so a damaged file can't leave the library half loaded.
+           Every count is checked against the length of the file before anything is allocated for it,
+           and every reference and member number is checked, so anything the library could not hold is
+           rejected here.
+  Arguments: filename - The snapshot file (String).
+  Returns: The state in the snapshot (LibrarySnapshot).
+           Throws an IOException if the file can't be read, or is not a complete snapshot of this version.
+  */
+  public static LibrarySnapshot read(String filename) throws IOException {
+    LibrarySnapshot s = new LibrarySnapshot();
+    long length = new File(filename).length();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a library snapshot: " + filename);
+      }
+
+      String[] strings = new String[readCount(in, 2, length)];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+
+      int bookCount = readCount(in, 22, length);
+      Book[] books = new Book[bookCount];
+      s.bookIndex = new HashMap<String,Integer>(bookCount * 4 / 3 + 1);
+      for (int slot = 0; slot < bookCount; slot++) {
+        String serialNumber = in.readUTF();
+        long serialKey = in.readLong();
+        books[slot] = new Book(strings[in.readInt()], strings[in.readInt()], strings[in.readInt()], serialNumber, serialKey);
+        s.bookIndex.put(serialNumber, slot);
+      }
+      s.books = new ArrayList<Book>(Arrays.asList(books));
+
+      s.authorCounts = new TreeMap<String,Integer>();
+      s.booksByAuthor = readPostings(in, strings, bookCount, s.authorCounts, length);
+      s.genreCounts = new TreeMap<String,Integer>();
+      s.booksByGenre = readPostings(in, strings, bookCount, s.genreCounts, length);
+
+      int copies = readCount(in, 6, length);
+      s.copyCounts = new HashMap<String,Integer>(copies * 4 / 3 + 1);
+      for (int i = 0; i < copies; i++) {
+        s.copyCounts.put(in.readUTF(), in.readInt());
+      }
+
+      // Members are numbered in order from the first member number, as the member directory needs
+      Member[] members = new Member[readCount(in, 4, length)];
+      for (int i = 0; i < members.length; i++) {
+        members[i] = new Member(in.readUTF(), in.readUTF());
+        if (!members[i].getMemberNumber().equals(String.valueOf(MemberDirectory.FIRST_MEMBER_NUMBER + i))) {
+          throw new IOException("Snapshot has an invalid member number: " + filename);
+        }
+      }
+      s.members = Arrays.asList(members);
+      s.nextMemberNumber = in.readInt();
+      if (s.nextMemberNumber < MemberDirectory.FIRST_MEMBER_NUMBER + members.length) {
+        throw new IOException("Snapshot has an invalid next member number: " + filename);
+      }
+
+      for (Member m: members) {
+        int renting = readCount(in, 4, length);
+        for (int i = 0; i < renting; i++) {
+          m.rent(books[in.readInt()]);
+        }
+      }
+
+      int rentedBooks = readCount(in, 8, length);
+      for (int i = 0; i < rentedBooks; i++) {
+        Book b = books[in.readInt()];
+        Member[] history = new Member[readCount(in, 4, length)];
+        for (int j = 0; j < history.length; j++) {
+          history[j] = members[in.readInt()];
+        }
+        b.restoreHistory(history);
+      }
+
+      for (Member m: members) {
+        Book[] history = new Book[readCount(in, 4, length)];
+        for (int j = 0; j < history.length; j++) {
+          history[j] = books[in.readInt()];
+        }
+        m.restoreHistory(history);
+      }
+
+    } catch (EOFException | ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Snapshot is incomplete: " + filename);
+    }
+    return s;
+  }
+
+  /*
+  Purpose: Helper method that reads the number of entries that follow, checking that it is not negative
+           and that that many entries of at least the given size could fit in the file.
+  */
+  private static int readCount(DataInputStream in, int entrySize, long length) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || (long) count * entrySize > length) {
+      throw new IOException("Snapshot has an invalid count: " + count);
+    }
+    return count;
+  }
+
+  /*
+  Purpose: Helper method that writes an author or genre index as the key's string number and its postings.
+  */
+  private static void writePostings(DataOutputStream out, Map<String,IntList> index, StringDictionary strings) throws IOException {
+    out.writeInt(index.size());
+    for (Map.Entry<String,IntList> entry: index.entrySet()) {
+      IntList postings = entry.getValue();
+      out.writeInt(strings.idOf(entry.getKey()));
+      out.writeInt(postings.size());
+      for (int i = 0; i < postings.size(); i++) {
+        out.writeInt(postings.get(i));
+      }
+    }
+  }
+
+  /*
+  Purpose: Helper method that reads an index written by writePostings, also filling in the count of
+           books under each key. Each position must be the position of one of the bookCount books.
+  */
+  private static Map<String,IntList> readPostings(DataInputStream in, String[] strings, int bookCount,
+      TreeMap<String,Integer> counts, long length) throws IOException {
+    int keys = readCount(in, 8, length);
+    Map<String,IntList> index = new HashMap<String,IntList>(keys * 4 / 3 + 1);
+    for (int i = 0; i < keys; i++) {
+      String key = strings[in.readInt()];
+      int size = readCount(in, 4, length);
+      IntList postings = new IntList();
+      for (int j = 0; j < size; j++) {
+        int slot = in.readInt();
+        if (slot < 0 || slot >= bookCount) {
+          throw new IOException("Snapshot has an invalid book position: " + slot);
+        }
+        postings.add(slot);
+      }
+      index.put(key, postings);
+      counts.put(key, size);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,55 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LockStripes {
+  // Fixed set of locks shared by all keys, so that locking a book or member never allocates a lock.
+  private ReentrantLock[] locks;
+  private int mask;
+
+  /*
+  Constructor
+  Arguments: stripes - The number of locks, rounded up to a power of two (int).
+  */
+  public LockStripes(int stripes) {
+    int size = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+    this.locks = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      this.locks[i] = new ReentrantLock();
+    }
+    this.mask = size - 1;
+  }
+
+  /*
+  Purpose: Locks the stripes of all the given keys, in ascending stripe order, so that two threads
+           locking overlapping sets of keys can never deadlock. Keys on the same stripe lock it once.
+  Arguments: keys - The keys to lock (int...).
+  Returns: The stripes that were locked (int[]), to pass to unlock().
+  */
+  public int[] lock(int... keys) {
+    int[] stripes = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      int h = keys[i] * 0x9E3779B9;
+      stripes[i] = (h ^ (h >>> 16)) & this.mask;
+    }
+    Arrays.sort(stripes);
+
+    for (int i = 0; i < stripes.length; i++) {
+      if (i == 0 || stripes[i] != stripes[i - 1]) {
+        this.locks[stripes[i]].lock();
+      }
+    }
+    return stripes;
+  }
+
+  /*
+  Purpose: Unlocks stripes locked by lock(), in the reverse order.
+  Arguments: stripes - The stripes returned by lock() (int[]).
+  */
+  public void unlock(int[] stripes) {
+    for (int i = stripes.length - 1; i >= 0; i--) {
+      if (i == 0 || stripes[i] != stripes[i - 1]) {
+        this.locks[stripes[i]].unlock();
+      }
+    }
+  }
+}
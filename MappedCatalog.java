@@ -0,0 +1,402 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class MappedCatalog {
+  // "LCAT", followed by the format version. Files with another version are rejected.
+  private static final int MAGIC = 0x4C434154;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 72;
+
+  // Fixed record widths, so that any record can be found from its number without reading anything else
+  private static final int BOOK_WIDTH = 32;    // serial number, title, author, genre (long string offsets)
+  private static final int SERIAL_WIDTH = 12;  // numeric serial number (long), book number (int)
+  private static final int NAME_WIDTH = 16;    // name (long string offset), first posting (int), posting count (int)
+
+  // Files are mapped in segments of at most SEGMENT_SIZE bytes. Each segment also maps the first OVERLAP bytes
+  // of the next one, so that a fixed width read never has to be split between segments.
+  private static final long SEGMENT_SIZE = 1L << 30;
+  private static final int OVERLAP = 64;
+
+  private MappedByteBuffer[] segments;
+  private int books;
+  private int authors;
+  private int genres;
+  private long bookTable;
+  private long serialIndex;
+  private long authorIndex;
+  private long genreIndex;
+  private long postings;
+
+  /*
+  Constructor
+  */
+  private MappedCatalog(MappedByteBuffer[] segments) {
+    this.segments = segments;
+  }
+
+  /*
+  Purpose: Writes the books to a catalog file that can be opened with open() and queried without loading it:
+
+           header         MAGIC, VERSION, the number of books, authors and genres, where each section starts,
+                          and the length of the whole file
+           book table     for each book in catalog order, the offsets of its four strings
+           serial index   the numeric serial number and book number of every book, sorted by serial number
+           author index   for each author in name order, the offset of the name and where its postings are
+           genre index    the same for genres
+           postings       the book numbers of each author's and genre's books, in serial number order
+           string area    every distinct string, as its length in bytes followed by its UTF-8 bytes
+
+           The file is replaced in one step using AtomicFile, so kiosks that have the old file mapped keep
+           reading it undisturbed, and a failed write leaves the old catalog in place.
+  Arguments: filename - The file to write (String), books - The books in catalog order (List<Book>),
+             booksByAuthor, booksByGenre - The positions of the books by each author and in each genre,
+             in serial number order (Map<String,IntList>).
+  */
+  public static void write(String filename, List<Book> books, Map<String,IntList> booksByAuthor,
+      Map<String,IntList> booksByGenre) throws IOException {
+
+    // Numbers every distinct string, in the order they will be written to the string area
+    StringDictionary strings = new StringDictionary();
+    int[] bookStrings = new int[books.size() * 4];
+    long[] serialEntries = new long[books.size()];
+    int slot = 0;
+    for (Book b: books) {
+      bookStrings[slot * 4] = strings.idOf(b.getSerialNumber());
+      bookStrings[slot * 4 + 1] = strings.idOf(b.getTitle());
+      bookStrings[slot * 4 + 2] = strings.idOf(b.getAuthor());
+      bookStrings[slot * 4 + 3] = strings.idOf(b.getGenre());
+      serialEntries[slot] = b.getSerialKey();
+      slot++;
+    }
+    String[] authorNames = booksByAuthor.keySet().toArray(new String[0]);
+    String[] genreNames = booksByGenre.keySet().toArray(new String[0]);
+    Arrays.sort(authorNames);
+    Arrays.sort(genreNames);
+
+    // Sorts book numbers by serial number, keeping catalog order for equal serial numbers
+    Integer[] bySerial = new Integer[books.size()];
+    for (int i = 0; i < bySerial.length; i++) {
+      bySerial[i] = i;
+    }
+    Arrays.sort(bySerial, (x, y) -> Long.compare(serialEntries[x], serialEntries[y]));
+
+    // Works out where everything goes
+    long bookTable = HEADER_SIZE;
+    long serialIndex = bookTable + (long) books.size() * BOOK_WIDTH;
+    long authorIndex = serialIndex + (long) books.size() * SERIAL_WIDTH;
+    long genreIndex = authorIndex + (long) authorNames.length * NAME_WIDTH;
+    long postings = genreIndex + (long) genreNames.length * NAME_WIDTH;
+    long stringArea = postings + 4L * (countPostings(booksByAuthor) + countPostings(booksByGenre));
+
+    List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+    long[] stringOffsets = new long[strings.size()];
+    long position = stringArea;
+    for (int i = 0; i < strings.size(); i++) {
+      byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+      encoded.add(bytes);
+      stringOffsets[i] = position;
+      position += 4 + bytes.length;
+    }
+
+    long length = position;
+
+    AtomicFile.write(filename, file -> {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 20));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(books.size());
+      out.writeInt(authorNames.length);
+      out.writeInt(genreNames.length);
+      out.writeLong(bookTable);
+      out.writeLong(serialIndex);
+      out.writeLong(authorIndex);
+      out.writeLong(genreIndex);
+      out.writeLong(postings);
+      out.writeLong(length);
+      out.write(new byte[HEADER_SIZE - out.size()]);
+
+      for (int id: bookStrings) {
+        out.writeLong(stringOffsets[id]);
+      }
+
+      for (int i: bySerial) {
+        out.writeLong(serialEntries[i]);
+        out.writeInt(i);
+      }
+
+      int first = 0;
+      for (String author: authorNames) {
+        out.writeLong(stringOffsets[strings.idOf(author)]);
+        out.writeInt(first);
+        out.writeInt(booksByAuthor.get(author).size());
+        first += booksByAuthor.get(author).size();
+      }
+      for (String genre: genreNames) {
+        out.writeLong(stringOffsets[strings.idOf(genre)]);
+        out.writeInt(first);
+        out.writeInt(booksByGenre.get(genre).size());
+        first += booksByGenre.get(genre).size();
+      }
+
+      writePostings(out, authorNames, booksByAuthor);
+      writePostings(out, genreNames, booksByGenre);
+
+      for (byte[] bytes: encoded) {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      out.close();
+    });
+  }
+
+  /*
+  Purpose: Opens a catalog file written by write(), by mapping it into memory. Nothing is read apart from
+           the header, so this takes the same time however big the catalog is.
+  Arguments: filename - The catalog file (String).
+  Returns: The catalog (MappedCatalog). Throws an IOException if the file is not a whole catalog of this version.
+  */
+  public static MappedCatalog open(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Not a library catalog: " + filename);
+      }
+
+      MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = i * SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE + OVERLAP, size - start));
+      }
+
+      MappedCatalog catalog = new MappedCatalog(segments);
+      if (catalog.readInt(0) != MAGIC || catalog.readInt(4) != VERSION) {
+        throw new IOException("Not a library catalog: " + filename);
+      }
+      catalog.books = catalog.readInt(8);
+      catalog.authors = catalog.readInt(12);
+      catalog.genres = catalog.readInt(16);
+      catalog.bookTable = catalog.readLong(20);
+      catalog.serialIndex = catalog.readLong(28);
+      catalog.authorIndex = catalog.readLong(36);
+      catalog.genreIndex = catalog.readLong(44);
+      catalog.postings = catalog.readLong(52);
+
+      // Every section has to lie inside the file, in order, and the file must be as long as when it was
+      // written, so that a truncated or damaged catalog is rejected here rather than failing on a later read
+      if (catalog.readLong(60) != size || catalog.books < 0 || catalog.authors < 0 || catalog.genres < 0
+          || catalog.bookTable != HEADER_SIZE
+          || catalog.serialIndex != catalog.bookTable + (long) catalog.books * BOOK_WIDTH
+          || catalog.authorIndex != catalog.serialIndex + (long) catalog.books * SERIAL_WIDTH
+          || catalog.genreIndex != catalog.authorIndex + (long) catalog.authors * NAME_WIDTH
+          || catalog.postings != catalog.genreIndex + (long) catalog.genres * NAME_WIDTH
+          || catalog.postings + 8L * catalog.books > size) {
+        throw new IOException("Damaged library catalog: " + filename);
+      }
+      return catalog;
+    }
+  }
+
+  /*
+  Purpose: Returns the number of books in the catalog.
+  */
+  public int size() {
+    return this.books;
+  }
+
+  /*
+  Purpose: Returns the short string of a book, in the same format as Book.shortString().
+  Arguments: book - The book number (int).
+  */
+  public String shortString(int book) {
+    return this.bookField(book, 1) + " (" + this.bookField(book, 2) + ")";
+  }
+
+  /*
+  Purpose: Returns the long string of a book, in the same format as Book.longString() for a book that is
+           not rented (the catalog does not know about loans).
+  Arguments: book - The book number (int).
+  */
+  public String longString(int book) {
+    return this.bookField(book, 0) + ": " + this.bookField(book, 1) + " (" + this.bookField(book, 2) + ", "
+      + this.bookField(book, 3) + ")" + System.lineSeparator() + "Currently available.";
+  }
+
+  /*
+  Purpose: Finds a book by its serial number, by binary searching the serial index.
+  Arguments: serialNumber - The serial number (String).
+  Returns: The book number (int), or -1 if there is no such book.
+  */
+  public int findBook(String serialNumber) {
+    long key;
+    try {
+      key = Long.parseLong(serialNumber);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+
+    // Finds the first entry with the serial number, then checks the entries with the same numeric value,
+    // as "007" and "7" are different serial numbers
+    int low = 0;
+    int high = this.books;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (this.readLong(this.serialIndex + (long) mid * SERIAL_WIDTH) < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    for (int i = low; i < this.books; i++) {
+      long entry = this.serialIndex + (long) i * SERIAL_WIDTH;
+      if (this.readLong(entry) != key) {
+        break;
+      }
+      int book = this.readInt(entry + 8);
+      if (this.bookField(book, 0).equals(serialNumber)) {
+        return book;
+      }
+    }
+    return -1;
+  }
+
+  /*
+  Purpose: Returns the book numbers of the books by an author, in serial number order.
+  Arguments: author - The author (String).
+  Returns: The book numbers (int[]), empty if there are no books by the author.
+  */
+  public int[] booksByAuthor(String author) {
+    return this.find(this.authorIndex, this.authors, author);
+  }
+
+  /*
+  Purpose: Returns the book numbers of the books in a genre, in serial number order.
+  Arguments: genre - The genre (String).
+  Returns: The book numbers (int[]), empty if there are no books in the genre.
+  */
+  public int[] booksByGenre(String genre) {
+    return this.find(this.genreIndex, this.genres, genre);
+  }
+
+  /*
+  Purpose: Returns the names of all the authors, in alphabetical order.
+  */
+  public List<String> authors() {
+    return this.names(this.authorIndex, this.authors);
+  }
+
+  /*
+  Purpose: Returns the names of all the genres, in alphabetical order.
+  */
+  public List<String> genres() {
+    return this.names(this.genreIndex, this.genres);
+  }
+
+  /*
+  Purpose: Helper method that binary searches an author or genre index for a name, and reads its postings.
+  */
+  private int[] find(long index, int count, String name) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long entry = index + (long) mid * NAME_WIDTH;
+      int order = this.readString(this.readLong(entry)).compareTo(name);
+      if (order < 0) {
+        low = mid + 1;
+      } else if (order > 0) {
+        high = mid - 1;
+      } else {
+        int first = this.readInt(entry + 8);
+        int[] books = new int[this.readInt(entry + 12)];
+        for (int i = 0; i < books.length; i++) {
+          books[i] = this.readInt(this.postings + 4L * (first + i));
+        }
+        return books;
+      }
+    }
+    return new int[0];
+  }
+
+  /*
+  Purpose: Helper method that reads every name in an author or genre index.
+  */
+  private List<String> names(long index, int count) {
+    List<String> names = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      names.add(this.readString(this.readLong(index + (long) i * NAME_WIDTH)));
+    }
+    return names;
+  }
+
+  /*
+  Purpose: Helper method that reads one of a book's strings (0 serial number, 1 title, 2 author, 3 genre).
+  */
+  private String bookField(int book, int field) {
+    return this.readString(this.readLong(this.bookTable + (long) book * BOOK_WIDTH + 8L * field));
+  }
+
+  /*
+  Purpose: Helper method that reads a string from the string area, which may be split between segments.
+  */
+  private String readString(long position) {
+    int length = this.readInt(position);
+    byte[] bytes = new byte[length];
+    long start = position + 4;
+    int done = 0;
+    while (done < length) {
+      MappedByteBuffer segment = this.segments[(int) ((start + done) / SEGMENT_SIZE)];
+      int offset = (int) ((start + done) % SEGMENT_SIZE);
+      int chunk = Math.min(length - done, segment.limit() - offset);
+      segment.get(offset, bytes, done, chunk);
+      done += chunk;
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /*
+  Purpose: Helper method that reads a big-endian int at a position in the file.
+  */
+  private int readInt(long position) {
+    return this.segments[(int) (position / SEGMENT_SIZE)].getInt((int) (position % SEGMENT_SIZE));
+  }
+
+  /*
+  Purpose: Helper method that reads a big-endian long at a position in the file.
+  */
+  private long readLong(long position) {
+    return this.segments[(int) (position / SEGMENT_SIZE)].getLong((int) (position % SEGMENT_SIZE));
+  }
+
+  /*
+  Purpose: Helper method that counts the postings in an author or genre index.
+  */
+  private static long countPostings(Map<String,IntList> index) {
+    long count = 0;
+    for (IntList postings: index.values()) {
+      count += postings.size();
+    }
+    return count;
+  }
+
+  /*
+  Purpose: Helper method that writes the postings of each name, in the order of names.
+  */
+  private static void writePostings(DataOutputStream out, String[] names, Map<String,IntList> index) throws IOException {
+    for (String name: names) {
+      IntList postings = index.get(name);
+      for (int i = 0; i < postings.size(); i++) {
+        out.writeInt(postings.get(i));
+      }
+    }
+  }
+}
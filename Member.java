@@ -1,12 +1,19 @@
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.LinkedHashSet;
 
 public class Member {
+  private static final Book[] NO_BOOKS = new Book[0];
+
   private String name;
   private String memberNumber;
-  private List<Book> history;
-  private List<Book> currentlyRented;
-  private List<String> historySerial;
+  // The history is a plain array with a count rather than a List, as members can have very long histories.
+  private Book[] history;
+  private int historySize;
+  private Set<Book> currentlyRented;
 
   /*
   Constructor
@@ -14,9 +21,9 @@ public class Member {
   public Member(String name, String memberNumber) {
     this.name = name;
     this.memberNumber = memberNumber;
-    this.history = new ArrayList<Book>();
-    this.currentlyRented = new ArrayList<Book>();
-    this.historySerial = new ArrayList<String>();
+    this.history = NO_BOOKS;
+    this.historySize = 0;
+    this.currentlyRented = new LinkedHashSet<Book>();
   }
 
   /*
@@ -38,18 +45,19 @@ public class Member {
   /*
   Purpose:  Returns the history of books rented, in the order they were returned (oldest first).
             Books currently being rented are not included in this list.
-  Returns:  The list of books that have been rented (List<Book>).
+  Returns:  The list of books that have been rented (List<Book>). The list is a read only view of the history.
   */
   public List<Book> history() {
-    return this.history;
+    return Collections.unmodifiableList(Arrays.asList(this.history).subList(0, this.historySize));
   }
 
   /*
   Purpose: Returns the list of books currently being rented, in the order they were rented.
+           The list is a copy, so it does not change as books are rented or returned.
   Returns: The list of books currently being rented (List<Book>).
   */
   public List<Book> renting() {
-    return this.currentlyRented;
+    return new ArrayList<Book>(this.currentlyRented);
   }
 
   /*
@@ -69,8 +77,11 @@ public class Member {
       return false;
     }
 
+    if (!book.rent(this)) {
+      return false;
+    }
     this.currentlyRented.add(book);
-    return book.rent(this);
+    return true;
   }
 
   /*
@@ -86,52 +97,48 @@ public class Member {
       return false;
     }
 
-    if (!this.currentlyRented.contains(book)) {
+    // The currently rented set is hashed, so this check and the removal are constant time
+    if (!this.currentlyRented.remove(book)) {
       return false;
     }
 
-    this.history.add(book);
-    this.historySerial.add(book.getSerialNumber());
-    this.currentlyRented.remove(book);
-
+    this.addToHistory(book);
     return book.relinquish(this);
   }
 
   /*
   Purpose: Returns all books rented by the member. Loops through the currently 
-           rented list and calls relinquish on each one.
+           rented set in the order the books were rented, returning each one, and then empties it.
   */
   public void relinquishAll() {
 
-    List<Book> temp = new ArrayList<Book>();
-
     for (Book b: this.currentlyRented) {
-      temp.add(b);
-    }
-
-    for (Book b: temp) {
-      this.relinquish(b);
+      this.addToHistory(b);
+      b.relinquish(this);
     }
+    this.currentlyRented.clear();
     
   }
 
-  /* 
-  Purpose:  A helper method that implements an insertion sort that will 
-            insert a book object into an array based on its serial number. 
-  Arguments:  books - The list of books the book is to be inserted into
-              book - The book to be inserted
+  /*
+  Purpose: Replaces the member's history with the given books, in the order they were returned,
+           for restoring a member saved by the Library's journal.
+  Arguments: books - The books the member has returned (Book[]).
   */
-  private static void addSorted(List<Book> books, Book book) {
-    for (int i = 0; i < books.size(); i ++) {
-      if (Integer.parseInt(book.getSerialNumber()) == Integer.parseInt(books.get(i).getSerialNumber())) {
-        return;
-      }
-      if (Integer.parseInt(book.getSerialNumber()) < Integer.parseInt(books.get(i).getSerialNumber())) {
-        books.add(i,book);
-        return;
-      }
+  void restoreHistory(Book[] books) {
+    this.history = books.length == 0 ? NO_BOOKS : books.clone();
+    this.historySize = books.length;
+  }
+
+  /*
+  Purpose: A helper method that records a returned book in the member's history.
+  Arguments: book - The book that was returned.
+  */
+  private void addToHistory(Book book) {
+    if (this.historySize == this.history.length) {
+      this.history = Arrays.copyOf(this.history, Math.max(this.historySize + (this.historySize >> 1), 4));
     }
-    books.add(book);
+    this.history[this.historySize++] = book;
   }
 
   /*
@@ -148,46 +155,47 @@ public class Member {
     if (members == null || members.length == 0) {
       return null;
     }
-    if (members[0] == null) {
-      return null;
-    }
-
-    // All books in the intersection must be in the first member's history, 
-    // so this is taken as the books to check.
-    List<Book> booksToCheck = members[0].history();
-
-    ArrayList<Book> common = new ArrayList<Book>();
 
-    boolean found = true;
-
-    // Checks for any null members in the array.
+    // Checks for any null members in the array, and finds the member with the shortest history.
+    Member smallest = members[0];
     for (Member m: members) {
       if (m == null) {
         return null;
       }
+      if (m.historySize < smallest.historySize) {
+        smallest = m;
+      }
     }
 
-    // For each book, the members are looped through. If the book is not found in a member's 
-    // history, the code moves onto checking the next book. If the book is not not found in any 
-    // of the members (it occurs in all), it is added to the common books list using the addsorted method.
-    for (Book b: booksToCheck) {
-      found = true;
+    // All books in the intersection must be in the shortest history, so its books are the first candidates.
+    // Each other member's history is then scanned once, keeping only the candidates found in it. The sets 
+    // only live for this call, so members don't keep a second copy of their history.
+    BookSet common = new BookSet();
+    for (int i = 0; i < smallest.historySize; i++) {
+      common.add(smallest.history[i]);
+    }
 
-      for (Member m: members) {
-        if (m == null) {
-          return null;
-        }
-        
-        if (!m.historySerial.contains(b.getSerialNumber())) {
-          found = false;
-          break;
+    for (Member m: members) {
+      if (common.size() == 0) {
+        break;
+      }
+      if (m == smallest) {
+        continue;
+      }
+      BookSet kept = new BookSet();
+      for (int i = 0; i < m.historySize; i++) {
+        if (common.contains(m.history[i])) {
+          kept.add(m.history[i]);
         }
       }
+      common = kept;
+    }
 
-      if (found) {
-        addSorted(common, b);
-      }
+    List<Book> sorted = new ArrayList<Book>(common.size());
+    for (Book b: common) {
+      sorted.add(b);
     }
-    return common;
+    sorted.sort(Book::compareSerialNumbers);
+    return sorted;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+public class MemberDirectory {
+  public static final int FIRST_MEMBER_NUMBER = 100000;
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Members are stored at the offset of their member number from FIRST_MEMBER_NUMBER.
+  // Member numbers are handed out sequentially, so the array is dense.
+  private Member[] members;
+  private int size;
+
+  /*
+  Constructor
+  */
+  public MemberDirectory() {
+    this.members = new Member[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Returns the number of members in the directory.
+  Returns: The number of members (int).
+  */
+  public int size() {
+    return this.size;
+  }
+
+  /*
+  Purpose: Adds a member to the directory at the offset given by their member number.
+           If the member number is not a valid member number, an IllegalArgumentException is thrown.
+  Arguments: member - The member to add.
+  */
+  public void add(Member member) {
+    int offset = toOffset(member.getMemberNumber());
+    if (offset == -1) {
+      throw new IllegalArgumentException("Invalid member number: " + member.getMemberNumber());
+    }
+
+    if (offset >= this.members.length) {
+      this.members = Arrays.copyOf(this.members, Math.max(offset + 1, this.members.length * 2));
+    }
+    if (this.members[offset] == null) {
+      this.size++;
+    }
+    this.members[offset] = member;
+  }
+
+  /*
+  Purpose: Removes every member from the directory.
+  */
+  public void clear() {
+    this.members = new Member[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /*
+  Purpose: Returns the offset in the directory of the member with the given member number.
+           If no such member exists, returns -1.
+  Arguments: memberNumber - The member number to look up (String).
+  Returns: The offset of the member (int), or -1.
+  */
+  public int indexOf(String memberNumber) {
+    int offset = toOffset(memberNumber);
+    if (offset == -1 || offset >= this.members.length || this.members[offset] == null) {
+      return -1;
+    }
+    return offset;
+  }
+
+  /*
+  Purpose: Returns the member stored at the given offset, as returned by indexOf.
+  Arguments: index - The offset of the member (int).
+  Returns: The member (Member), or null if there is no member at that offset.
+  */
+  public Member get(int index) {
+    if (index < 0 || index >= this.members.length) {
+      return null;
+    }
+    return this.members[index];
+  }
+
+  /*
+  Purpose: A helper method that converts a member number to its offset from FIRST_MEMBER_NUMBER
+           without creating any objects.
+           Only the canonical form of a number is accepted (digits only, no sign or leading zeros),
+           so that two different strings never map to the same member.
+  Arguments: memberNumber - The member number to convert (String).
+  Returns: The offset (int), or -1 if the string is not a member number.
+  */
+  private static int toOffset(String memberNumber) {
+    if (memberNumber == null) {
+      return -1;
+    }
+    int len = memberNumber.length();
+    if (len == 0 || len > 9 || (len > 1 && memberNumber.charAt(0) == '0')) {
+      return -1;
+    }
+
+    int number = 0;
+    for (int i = 0; i < len; i++) {
+      char c = memberNumber.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      number = number * 10 + (c - '0');
+    }
+
+    if (number < FIRST_MEMBER_NUMBER) {
+      return -1;
+    }
+    return number - FIRST_MEMBER_NUMBER;
+  }
+}
@@ -0,0 +1,217 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class ParallelCollectionLoader {
+  // Can be lowered with -Dlibrary.chunkSize=<bytes>, e.g. so that a small file is still split into several chunks
+  private static final long MIN_CHUNK_SIZE = Long.getLong("library.chunkSize", 1L << 20);
+  private static final long MAX_CHUNK_SIZE = 64L << 20;
+  private static final int SCAN_BUFFER_SIZE = 1 << 12;
+
+  /*
+  Purpose: Reads in the collection of books from the given csv file in parallel, and passes the books
+    that should be added to the sink in file order.
+    The file is split into line-aligned chunks that are parsed on the common fork-join pool. While parsing,
+    each serial number not already in the catalog is recorded in a concurrent index with the position of its
+    first row in the file. The chunks are then merged in file order, passing on only the first row for each
+    serial number, so the result is the same as reading the file sequentially and skipping serial numbers
+    already added. Messages for skipped rows are printed as the chunks are merged, so they come out in file order.
+    Chunks are cut after line breaks without following quotes, so a cut can fall inside a quoted field that
+    contains a line break. Each chunk but the last must then end with a record that was still open when the
+    chunk ran out, which is checked after parsing; if any does, the file is read sequentially instead.
+  Arguments: filename - The csv file containing a book collection,
+             values - The pool to share repeated authors and genres through, which only needs to live as long
+               as the load,
+             inCatalog - Tests whether a serial number is already in the system. It is called from several
+               threads at once, so the catalog must not change until load returns.
+             sink - The consumer to pass each book to be added to, called on the calling thread.
+  Returns: The number of rows read, not counting the title line, or -1 if the file can't be read (long)
+  */
+  public static long load(String filename, StringPool values, Predicate<String> inCatalog, Consumer<Book> sink) {
+    if (filename == null || values == null || inCatalog == null || sink == null) {
+      return -1;
+    }
+
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      List<long[]> chunks = split(channel);
+
+      ConcurrentHashMap<String,Long> firstRows = new ConcurrentHashMap<String,Long>();
+      AtomicLong rows = new AtomicLong();
+      AtomicBoolean misaligned = new AtomicBoolean();
+      List<List<String>> skipped = new ArrayList<List<String>>();
+      List<Callable<List<Book>>> tasks = new ArrayList<Callable<List<Book>>>();
+      for (int i = 0; i < chunks.size(); i++) {
+        final int chunk = i;
+        final boolean last = i == chunks.size() - 1;
+        final List<String> messages = new ArrayList<String>();
+        skipped.add(messages);
+        tasks.add(() -> parse(channel, chunks.get(chunk), chunk, last, values, inCatalog, firstRows, rows, misaligned,
+          messages));
+      }
+
+      List<Future<List<Book>>> parsed = ForkJoinPool.commonPool().invokeAll(tasks);
+      for (Future<List<Book>> chunk : parsed) {
+        chunk.get();
+      }
+      if (misaligned.get()) {
+        return loadSequentially(filename, values, inCatalog, sink);
+      }
+
+      // Merges in file order, keeping only the first row for each serial number
+      for (int chunk = 0; chunk < parsed.size(); chunk++) {
+        List<Book> books = parsed.get(chunk).get();
+        for (String message : skipped.get(chunk)) {
+          System.err.println(message);
+        }
+
+        for (int row = 0; row < books.size(); row++) {
+          Book b = books.get(row);
+          if (firstRows.get(b.getSerialNumber()) == position(chunk, row)) {
+            sink.accept(b);
+          }
+        }
+      }
+      return rows.get();
+
+    } catch (IOException e) {
+      return -1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        return -1;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /*
+  Purpose: Helper method that reads the file sequentially, for when it can't be split into chunks of whole
+    records. The sink gets the same books as from the parallel load.
+  */
+  private static long loadSequentially(String filename, StringPool values, Predicate<String> inCatalog,
+                                       Consumer<Book> sink) {
+    Set<String> added = new HashSet<String>();
+    return Book.streamBookCollection(filename, values, b -> {
+      if (!inCatalog.test(b.getSerialNumber()) && added.add(b.getSerialNumber())) {
+        sink.accept(b);
+      }
+    });
+  }
+
+  /*
+  Purpose: Helper method that splits the file into chunks of roughly equal size, each ending just after
+    a line break (or at the end of the file). The first chunk starts with the title line.
+  Arguments: channel - The open csv file (FileChannel).
+  Returns: The chunks as {start, end} byte offsets, in file order (List<long[]>).
+  */
+  private static List<long[]> split(FileChannel channel) throws IOException {
+    List<long[]> chunks = new ArrayList<long[]>();
+    long size = channel.size();
+
+    long start = 0;
+    int parallelism = ForkJoinPool.commonPool().getParallelism();
+    long target = Math.min(Math.max(size / (parallelism * 4L), MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+
+    while (start < size) {
+      long end = nextLine(channel, Math.min(start + target, size) - 1);
+      chunks.add(new long[] {start, end});
+      start = end;
+    }
+    return chunks;
+  }
+
+  /*
+  Purpose: Helper method that finds the start of the line after the given offset.
+  Arguments: channel - The open csv file (FileChannel), from - The offset to search from (long).
+  Returns: The offset just after the next line break at or after from, or the size of the file if there is none (long).
+  */
+  private static long nextLine(FileChannel channel, long from) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    long position = from;
+
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+  }
+
+  /*
+  Purpose: Helper method that parses one chunk of the file, run on the fork-join pool.
+    Books already in the catalog are left out, and the rest are recorded in firstRows.
+  Arguments: channel - The open csv file, chunk - The {start, end} offsets of the chunk, index - The index of
+    the chunk, last - Whether it is the last chunk, values - The pool for the authors and genres, inCatalog - Tests whether a serial number is already in
+    the system, firstRows - The concurrent index of the first position of each serial number, rows - The
+    running count of rows read, misaligned - Set if the chunk ends inside a record, skipped - The list to add
+    the messages for skipped rows to.
+  Returns: The parsed books, in file order (List<Book>)
+  */
+  private static List<Book> parse(FileChannel channel, long[] chunk, int index, boolean last, StringPool values,
+                                  Predicate<String> inCatalog, ConcurrentHashMap<String,Long> firstRows,
+                                  AtomicLong rows, AtomicBoolean misaligned, List<String> skipped) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate((int) (chunk[1] - chunk[0]));
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, chunk[0] + bytes.position()) < 0) {
+        break;
+      }
+    }
+
+    List<Book> books = new ArrayList<Book>();
+    BookCsvReader csv = new BookCsvReader(new InputStreamReader(
+      new ByteArrayInputStream(bytes.array(), 0, bytes.position()), StandardCharsets.UTF_8));
+
+    if (index == 0) {
+      csv.next(); // Skips the title line.
+    }
+    while (csv.next()) {
+      Book b = Book.fromRecord(csv, values, skipped::add);
+      if (b == null || inCatalog.test(b.getSerialNumber())) {
+        continue;
+      }
+      firstRows.merge(b.getSerialNumber(), position(index, books.size()), Math::min);
+      books.add(b);
+    }
+    if (!last && !csv.endedWithLineBreak()) {
+      // The chunk was cut inside a quoted field, so the next one doesn't start at a record
+      misaligned.set(true);
+    }
+    rows.addAndGet(index == 0 ? Math.max(csv.rowNumber() - 1, 0) : csv.rowNumber());
+    return books;
+  }
+
+  /*
+  Purpose: Helper method that combines a chunk index and a row within the chunk into one
+    position that orders rows the same way as the file.
+  */
+  private static long position(int chunk, int row) {
+    return ((long) chunk << 32) | row;
+  }
+}
@@ -0,0 +1,37 @@
+import java.io.File;
+
+public class SavedCollection {
+  private String path;
+  private int books;
+  private long size;
+  private long modified;
+
+  /*
+  Constructor
+  Records the state of a collection file just after the first given number of books in the system were saved to it.
+  Arguments: file - The collection file (File), books - The number of books saved to it (int).
+  */
+  public SavedCollection(File file, int books) {
+    this.path = file.getAbsolutePath();
+    this.books = books;
+    this.size = file.length();
+    this.modified = file.lastModified();
+  }
+
+  /*
+  Purpose: Returns the number of books in the system that have been saved to the file.
+  */
+  public int books() {
+    return this.books;
+  }
+
+  /*
+  Purpose: Returns whether the file still has exactly the size and modification time it had when it was saved,
+           i.e. nothing else has written to it since, so books can be added to the end of it.
+  Arguments: file - The collection file (File).
+  */
+  public boolean isUnchanged(File file) {
+    return file.getAbsolutePath().equals(this.path) && file.isFile()
+      && file.length() == this.size && file.lastModified() == this.modified;
+  }
+}
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StringDictionary {
+  private List<String> values;
+  private Map<String,Integer> ids;
+
+  /*
+  Constructor
+  */
+  public StringDictionary() {
+    this.values = new ArrayList<String>();
+    this.ids = new HashMap<String,Integer>();
+  }
+
+  /*
+  Purpose: Returns the id of the given value, adding it to the dictionary if it is new.
+           Ids are given out in order from 0.
+  Arguments: value - The value to encode (String).
+  Returns: The id of the value (int).
+  */
+  public int idOf(String value) {
+    Integer id = this.ids.get(value);
+    if (id == null) {
+      id = this.values.size();
+      this.values.add(value);
+      this.ids.put(value, id);
+    }
+    return id;
+  }
+
+  /*
+  Purpose: Returns the value with the given id.
+  Arguments: id - The id of the value (int).
+  */
+  public String get(int id) {
+    return this.values.get(id);
+  }
+
+  /*
+  Purpose: Returns the number of distinct values in the dictionary.
+  */
+  public int size() {
+    return this.values.size();
+  }
+}
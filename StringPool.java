@@ -0,0 +1,76 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StringPool {
+  // Estimated size of a String object and its empty backing array on a 64 bit JVM with compressed pointers.
+  private static final int STRING_OVERHEAD = 24 + 16;
+
+  private ConcurrentHashMap<String,String> values;
+  private AtomicLong repeats;
+  private AtomicLong bytesSaved;
+
+  /*
+  Constructor
+  */
+  public StringPool() {
+    this.values = new ConcurrentHashMap<String,String>();
+    this.repeats = new AtomicLong();
+    this.bytesSaved = new AtomicLong();
+  }
+
+  /*
+  Purpose: Returns the pooled instance of the given value, adding the value to the pool if it is new,
+           so that every equal value read from a file shares one String.
+           Safe to call from several threads at once.
+  Arguments: value - The value to look up (String).
+  Returns: The pooled value (String), or null if value is null.
+  */
+  public String canonical(String value) {
+    if (value == null) {
+      return null;
+    }
+    String pooled = this.values.putIfAbsent(value, value);
+    if (pooled == null) {
+      return value;
+    }
+    this.repeats.incrementAndGet();
+    this.bytesSaved.addAndGet(sizeOf(value));
+    return pooled;
+  }
+
+  /*
+  Purpose: Returns the number of distinct values in the pool.
+  */
+  public int size() {
+    return this.values.size();
+  }
+
+  /*
+  Purpose: Returns the number of values that were replaced by an instance already in the pool.
+  */
+  public long repeats() {
+    return this.repeats.get();
+  }
+
+  /*
+  Purpose: Returns the estimated number of bytes of heap that would otherwise be held by the repeated values.
+  */
+  public long bytesSaved() {
+    return this.bytesSaved.get();
+  }
+
+  /*
+  Purpose: Helper method that estimates the heap used by a String, storing one byte per character if
+           every character fits (compact strings) and two otherwise, rounded up to 8 bytes.
+  */
+  private static long sizeOf(String value) {
+    int bytesPerChar = 1;
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > 0xFF) {
+        bytesPerChar = 2;
+        break;
+      }
+    }
+    return STRING_OVERHEAD + ((value.length() * bytesPerChar + 7L) & ~7L);
+  }
+}
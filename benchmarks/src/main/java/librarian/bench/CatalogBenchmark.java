@@ -0,0 +1,56 @@
+package librarian.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+The whole catalog operations: Library.getBooksByAuthor (AUTHOR), getBooksByGenre (GENRE) and
+getCopies (NUMBER COPIES), whose output goes to a stream that discards it.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+  @Param({"1000", "100000"})
+  public int books;
+
+  private Object library;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    this.library = Fixtures.newLibrary(this.books, 0);
+  }
+
+  @Benchmark
+  public void getBooksByAuthor() throws Throwable {
+    String author = Fixtures.author(this.next++, this.books);
+    Fixtures.GET_BOOKS_BY_AUTHOR.invokeExact(this.library, author);
+  }
+
+  @Benchmark
+  public void getBooksByGenre() throws Throwable {
+    String genre = Fixtures.genre(this.next++);
+    Fixtures.GET_BOOKS_BY_GENRE.invokeExact(this.library, genre);
+  }
+
+  @Benchmark
+  public void getCopies() throws Throwable {
+    Fixtures.GET_COPIES.invokeExact(this.library);
+  }
+}
@@ -0,0 +1,63 @@
+package librarian.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Book.readBookCollection and saveBookCollection on a generated collection file in the temporary directory.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectionFileBenchmark {
+  @Param({"1000", "100000"})
+  public int books;
+
+  private Path source;
+  private Path target;
+  private List<?> catalog;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    this.source = Files.createTempFile("bench-read", ".csv");
+    this.target = Files.createTempFile("bench-save", ".csv");
+    Fixtures.writeCollection(this.source, this.books);
+    this.catalog = (List<?>) Fixtures.READ_COLLECTION.invokeExact(this.source.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(this.source);
+    Files.deleteIfExists(this.target);
+  }
+
+  @Benchmark
+  public List<?> readBookCollection() throws Throwable {
+    return (List<?>) Fixtures.READ_COLLECTION.invokeExact(this.source.toString());
+  }
+
+  @Benchmark
+  public boolean saveBookCollection() throws Throwable {
+    return (boolean) Fixtures.SAVE_COLLECTION.invokeExact(this.target.toString(), (Collection<?>) this.catalog);
+  }
+}
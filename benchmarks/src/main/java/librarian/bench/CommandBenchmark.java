@@ -0,0 +1,76 @@
+package librarian.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+End to end Library.runCommand throughput, from the typed line to the (discarded) output, over a fixed mix
+of the commands a front desk runs most: looking up books, authors, genres and members, and renting and
+returning books. Every RENT is followed by its RELINQUISH, so the state is the same after each pass through
+the script apart from the rental histories, which grow as they would in use. The library is rebuilt before
+each iteration, so the histories only grow for the length of one and every iteration measures the same work.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+  private static final int SCRIPT_LENGTH = 1 << 12;
+
+  @Param({"1000", "100000"})
+  public int books;
+
+  @Param({"100", "10000"})
+  public int members;
+
+  private Object library;
+  private String[] script;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    Random random = new Random(3);
+    List<String> script = new ArrayList<String>(SCRIPT_LENGTH);
+    while (script.size() < SCRIPT_LENGTH) {
+      int serial = 1 + random.nextInt(this.books);
+      String member = String.valueOf(Fixtures.FIRST_MEMBER_NUMBER + random.nextInt(this.members));
+      script.add("BOOK " + serial);
+      script.add("BOOK " + serial + " LONG");
+      script.add("AUTHOR " + Fixtures.author(serial, this.books));
+      script.add("GENRE " + Fixtures.genre(serial));
+      script.add("MEMBER " + member);
+      script.add("RENT " + member + " " + serial);
+      script.add("MEMBER BOOKS " + member);
+      script.add("RELINQUISH " + member + " " + serial);
+    }
+    this.script = script.subList(0, SCRIPT_LENGTH).toArray(new String[0]);
+  }
+
+  @Setup(Level.Iteration)
+  public void newLibrary() throws Throwable {
+    this.library = Fixtures.newLibrary(this.books, this.members);
+    this.next = 0;
+  }
+
+  @Benchmark
+  public void runCommand() throws Throwable {
+    Fixtures.RUN_COMMAND.invokeExact(this.library, this.script[this.next++ & (SCRIPT_LENGTH - 1)]);
+  }
+}
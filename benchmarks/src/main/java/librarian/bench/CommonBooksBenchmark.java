@@ -0,0 +1,68 @@
+package librarian.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Member.commonBooks (COMMON) for a number of members who have each returned history books, drawn at random
+from a shelf of twice as many, so about half of any two histories overlap.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonBooksBenchmark {
+  @Param({"2", "8"})
+  public int members;
+
+  @Param({"100", "10000"})
+  public int history;
+
+  private Object[] group;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    int shelfSize = this.history * 2;
+    Object[] shelf = new Object[shelfSize];
+    for (int i = 0; i < shelfSize; i++) {
+      shelf[i] = (Object) Fixtures.NEW_BOOK.invokeExact("Title " + i, "Author", "Genre", String.valueOf(i + 1));
+    }
+
+    Random random = new Random(11);
+    this.group = Fixtures.newMembers(this.members);
+    for (int m = 0; m < this.members; m++) {
+      Object member = (Object) Fixtures.NEW_MEMBER.invokeExact("Member " + m, String.valueOf(Fixtures.FIRST_MEMBER_NUMBER + m));
+      int[] order = Fixtures.shuffledSerials(shelfSize, random.nextLong());
+      for (int i = 0; i < this.history; i++) {
+        Object book = shelf[order[i] - 1];
+        boolean rented = (boolean) Fixtures.RENT.invokeExact(member, book);
+        boolean returned = (boolean) Fixtures.RELINQUISH.invokeExact(member, book);
+        if (!rented || !returned) {
+          throw new IllegalStateException("Unable to build the rental history.");
+        }
+      }
+      this.group[m] = member;
+    }
+  }
+
+  @Benchmark
+  public List<?> commonBooks() throws Throwable {
+    return (List<?>) Fixtures.COMMON_BOOKS.invokeExact(this.group);
+  }
+}
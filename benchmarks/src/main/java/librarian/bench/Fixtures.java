@@ -0,0 +1,216 @@
+package librarian.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/*
+The library classes are in the default package, which can't be imported, and JMH won't run benchmarks
+that are in it. So the benchmarks reach Library, Book and Member through these method handles, with every
+library type replaced by Object. As static finals they are constants to the JIT, so calling one with
+invokeExact costs about the same as calling the method directly.
+*/
+final class Fixtures {
+  static final Class<?> LIBRARY = load("Library");
+  static final Class<?> BOOK = load("Book");
+  static final Class<?> MEMBER = load("Member");
+
+  // Library
+  static final MethodHandle NEW_LIBRARY = constructor(LIBRARY, PrintStream.class);
+  static final MethodHandle RUN_COMMAND = method(LIBRARY, "runCommand", void.class, String.class);
+  static final MethodHandle GET_BOOK_INDEX = method(LIBRARY, "getBookIndex", int.class, String.class);
+  static final MethodHandle GET_MEMBER_INDEX = method(LIBRARY, "getMemberIndex", int.class, String.class);
+  static final MethodHandle GET_COPIES = method(LIBRARY, "getCopies", void.class);
+  static final MethodHandle GET_BOOKS_BY_AUTHOR = method(LIBRARY, "getBooksByAuthor", void.class, String.class);
+  static final MethodHandle GET_BOOKS_BY_GENRE = method(LIBRARY, "getBooksByGenre", void.class, String.class);
+
+  // Book
+  static final MethodHandle NEW_BOOK = constructor(BOOK, String.class, String.class, String.class, String.class);
+  static final MethodHandle READ_COLLECTION = staticMethod(BOOK, "readBookCollection", List.class, String.class);
+  static final MethodHandle SAVE_COLLECTION = staticMethod(BOOK, "saveBookCollection", boolean.class, String.class, Collection.class);
+
+  // Member
+  static final MethodHandle NEW_MEMBER = constructor(MEMBER, String.class, String.class);
+  static final MethodHandle RENT = method(MEMBER, "rent", boolean.class, BOOK);
+  static final MethodHandle RELINQUISH = method(MEMBER, "relinquish", boolean.class, BOOK);
+  static final MethodHandle COMMON_BOOKS = staticMethod(MEMBER, "commonBooks", List.class, MEMBER.arrayType());
+
+  // The first member number handed out by ADD MEMBER (MemberDirectory.FIRST_MEMBER_NUMBER)
+  static final int FIRST_MEMBER_NUMBER = firstMemberNumber();
+
+  private Fixtures() {
+  }
+
+  /*
+  Purpose: Creates a library whose output is thrown away, so benchmarks measure the work and not the terminal.
+  */
+  static Object newLibrary() throws Throwable {
+    return (Object) NEW_LIBRARY.invokeExact(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  /*
+  Purpose: Runs a command on a library, as if it had been typed.
+  */
+  static void run(Object library, String command) throws Throwable {
+    RUN_COMMAND.invokeExact(library, command);
+  }
+
+  /*
+  Purpose: Creates a library holding a generated collection of books and some members.
+  Arguments: books - The number of books (int), members - The number of members (int).
+  */
+  static Object newLibrary(int books, int members) throws Throwable {
+    Path csv = Files.createTempFile("bench-collection", ".csv");
+    try {
+      writeCollection(csv, books);
+      Object library = newLibrary();
+      run(library, "ADD COLLECTION " + csv);
+      for (int i = 0; i < members; i++) {
+        run(library, "ADD MEMBER Member " + i);
+      }
+      return library;
+    } finally {
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  /*
+  Purpose: Writes a collection csv with the given number of books. Serial numbers 1 to books appear in a
+           shuffled order, there are about books / 50 authors and 20 genres, and each title appears on
+           about four rows, so NUMBER COPIES has copies to count.
+  */
+  static void writeCollection(Path file, int books) throws IOException {
+    int[] serials = shuffledSerials(books, 42);
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+      out.println("serialNumber,title,author,genre");
+      for (int i = 0; i < books; i++) {
+        int serial = serials[i];
+        out.println(serial + ",Title " + (serial % titles(books)) + "," + author(serial, books) + "," + genre(serial));
+      }
+    }
+  }
+
+  /*
+  Purpose: Returns the serial numbers 1 to count in a shuffled order, the same for every run.
+  */
+  static int[] shuffledSerials(int count, long seed) {
+    int[] serials = new int[count];
+    for (int i = 0; i < count; i++) {
+      serials[i] = i + 1;
+    }
+    Random random = new Random(seed);
+    for (int i = count - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = serials[i];
+      serials[i] = serials[j];
+      serials[j] = swap;
+    }
+    return serials;
+  }
+
+  static String author(int serial, int books) {
+    return "Author " + (serial % authors(books));
+  }
+
+  static int authors(int books) {
+    return Math.max(1, books / 50);
+  }
+
+  static String genre(int serial) {
+    return "Genre " + (serial % 20);
+  }
+
+  private static int titles(int books) {
+    return Math.max(1, books / 4);
+  }
+
+  /*
+  Purpose: Creates an empty Member[] of the given length, for Member.commonBooks.
+  */
+  static Object[] newMembers(int length) {
+    return (Object[]) Array.newInstance(MEMBER, length);
+  }
+
+  private static int firstMemberNumber() {
+    try {
+      Class<?> directory = load("MemberDirectory");
+      return (int) MethodHandles.privateLookupIn(directory, MethodHandles.lookup())
+        .findStaticGetter(directory, "FIRST_MEMBER_NUMBER", int.class).invoke();
+    } catch (Throwable e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static Class<?> load(String name) {
+    try {
+      return Class.forName(name);
+    } catch (ClassNotFoundException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+    try {
+      MethodHandle handle = lookup(owner).findConstructor(owner, MethodType.methodType(void.class, parameters));
+      return hide(handle);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static MethodHandle method(Class<?> owner, String name, Class<?> result, Class<?>... parameters) {
+    try {
+      MethodHandle handle = lookup(owner).findVirtual(owner, name, MethodType.methodType(result, parameters));
+      return hide(handle);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> result, Class<?>... parameters) {
+    try {
+      MethodHandle handle = lookup(owner).findStatic(owner, name, MethodType.methodType(result, parameters));
+      return hide(handle);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /*
+  Purpose: Changes every library type in a handle's type to Object (or Object[] for arrays of them),
+           leaving the JDK types as they are.
+  */
+  private static MethodHandle hide(MethodHandle handle) {
+    MethodType type = handle.type();
+    for (int i = 0; i < type.parameterCount(); i++) {
+      type = type.changeParameterType(i, hide(type.parameterType(i)));
+    }
+    return handle.asType(type.changeReturnType(hide(type.returnType())));
+  }
+
+  private static Class<?> hide(Class<?> type) {
+    if (type.isArray()) {
+      return hide(type.getComponentType()).arrayType();
+    }
+    if (!type.isPrimitive() && type.getPackageName().isEmpty()) {
+      return Object.class;
+    }
+    return type;
+  }
+
+  // A lookup with access to private members, which works as the library and benchmarks share the unnamed module
+  private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+    return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+  }
+}
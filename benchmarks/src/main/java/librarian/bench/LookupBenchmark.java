@@ -0,0 +1,68 @@
+package librarian.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Library.getBookIndex and getMemberIndex, which every command naming a book or member goes through.
+One key in eight is not in the library, as typed commands often name books and members that don't exist.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+  private static final int KEYS = 1 << 12;
+
+  @Param({"1000", "100000"})
+  public int books;
+
+  @Param({"100", "10000"})
+  public int members;
+
+  private Object library;
+  private String[] serialNumbers;
+  private String[] memberNumbers;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    this.library = Fixtures.newLibrary(this.books, this.members);
+
+    Random random = new Random(7);
+    this.serialNumbers = new String[KEYS];
+    this.memberNumbers = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      boolean miss = random.nextInt(8) == 0;
+      this.serialNumbers[i] = String.valueOf(miss ? this.books + 1 + i : 1 + random.nextInt(this.books));
+      this.memberNumbers[i] = String.valueOf(Fixtures.FIRST_MEMBER_NUMBER + (miss ? this.members + i : random.nextInt(this.members)));
+    }
+  }
+
+  @Benchmark
+  public int getBookIndex() throws Throwable {
+    String serialNumber = this.serialNumbers[this.next++ & (KEYS - 1)];
+    return (int) Fixtures.GET_BOOK_INDEX.invokeExact(this.library, serialNumber);
+  }
+
+  @Benchmark
+  public int getMemberIndex() throws Throwable {
+    String memberNumber = this.memberNumbers[this.next++ & (KEYS - 1)];
+    return (int) Fixtures.GET_MEMBER_INDEX.invokeExact(this.library, memberNumber);
+  }
+}
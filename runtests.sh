@@ -8,8 +8,26 @@ for folder in `ls -d testing/*/ | sort -V`; do
 
   expected_file=testing/$name/$name.out
   in_file=testing/$name/$name.in
+  # Optional java options for the test, e.g. to turn on the ADD BOOK index
+  opts_file=testing/$name/$name.opts
+  opts=$(cat $opts_file 2>/dev/null)
+  # Optional program arguments for the test, e.g. --batch
+  args_file=testing/$name/$name.args
+  args=$(cat $args_file 2>/dev/null)
+  # Files written by the test (e.g. a journal) go in its work folder, which is emptied before and after
+  work=testing/$name/work
+  rm -rf $work
+  mkdir -p $work
+  # Optional commands run first with the same options, and with the arguments in <name>.setup.args 
+  #  if there are any, e.g. to write the journal the test replays. Their output is not checked.
+  setup_file=testing/$name/$name.setup
+  if [ -f $setup_file ]; then
+    setup_args=$(cat testing/$name/$name.setup.args 2>/dev/null || echo $args)
+    java $opts Library $setup_args < $setup_file > /dev/null
+  fi
 
-  java Library < $in_file | diff - $expected_file || echo "Test $name failed!\n"
+  java $opts Library $args < $in_file | diff - $expected_file || echo "Test $name failed!\n"
+  rm -rf $work
   count=$((count+1))
 done
 